@@ -0,0 +1,442 @@
+package org.sini;
+
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Bench.java
+ * @version 1.0.0
+ * @author RuneTekk Development (SiniSoul)
+ */
+public final class Bench {
+
+    /**
+     * The amount of warmup iterations of each benchmark.
+     */
+    private static final int WARMUP_ITERATIONS = 3;
+
+    /**
+     * The amount of measured iterations of each benchmark.
+     */
+    private static final int MEASUREMENT_ITERATIONS = 5;
+
+    /**
+     * The length of each iteration in nanoseconds.
+     */
+    private static final long ITERATION_NANOS = 200000000L;
+
+    /**
+     * The amount of copies of the measured instruction in the loop of an instruction benchmark.
+     */
+    private static final int LOOP_INSTRUCTIONS = 64;
+
+    /**
+     * The address of the loop of an instruction benchmark.
+     */
+    private static final int LOOP_ADDRESS = 0x1000;
+
+    /**
+     * The amount of cycles an instruction benchmark runs for on each call.
+     */
+    private static final long CALL_CYCLES = 100000;
+
+    /**
+     * The names of the b values measured by the instruction benchmarks.
+     */
+    private static final String[] MODE_NAMES = { "register", "[register]", "[nextword+register]", "peek", "[nextword]", "literal", "nextwordliteral" };
+
+    /**
+     * The b value opcodes measured by the instruction benchmarks, J is 1 and B points at
+     * memory that holds 1.
+     */
+    private static final int[] MODES = { 0x07, 0x09, 0x11, 0x19, 0x1E, 0x21, 0x1F };
+
+    /**
+     * The next words of the b values measured by the instruction benchmarks.
+     */
+    private static final int[] MODE_WORDS = { -1, -1, 0x10, -1, 0x4020, -1, 0x1 };
+
+    /**
+     * The amounts of lines of the synthetic sources that are assembled.
+     */
+    private static final int[] SOURCE_LINES = { 1000, 10000, 50000 };
+
+    /**
+     * The results of the benchmarks that have been run.
+     */
+    private final List<String> results = new ArrayList<String>();
+
+    /**
+     * The benchmarks whose names contain this are run.
+     */
+    private final String filter;
+
+    /**
+     * A unit of work that is measured.
+     */
+    private abstract static class Task {
+
+        /**
+         * Runs the work once.
+         * @return The amount of operations done.
+         * @throws Exception An exception was thrown by the work.
+         */
+        abstract long run() throws Exception;
+    }
+
+    /**
+     * Constructs a new {@link Bench};
+     * @param filter The benchmarks whose names contain this are run.
+     */
+    private Bench(String filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * Measures a benchmark, the operations done are counted for each iteration
+     * and the throughput of each measured iteration is recorded.
+     * @param name The name of the benchmark.
+     * @param unit The unit of the throughput.
+     * @param task The work to measure.
+     * @throws Exception An exception was thrown by the work.
+     */
+    private void measure(String name, String unit, Task task) throws Exception {
+        if(!name.contains(filter))
+            return;
+        double[] scores = new double[MEASUREMENT_ITERATIONS];
+        for(int iteration = 0; iteration < WARMUP_ITERATIONS + MEASUREMENT_ITERATIONS; iteration++) {
+            long operations = 0;
+            long start = System.nanoTime();
+            long elapsed;
+            do {
+                operations += task.run();
+                elapsed = System.nanoTime() - start;
+            } while(elapsed < ITERATION_NANOS);
+            if(iteration >= WARMUP_ITERATIONS)
+                scores[iteration - WARMUP_ITERATIONS] = operations * 1e9 / elapsed;
+        }
+        double mean = 0;
+        for(double score : scores)
+            mean += score;
+        mean /= scores.length;
+        double variance = 0;
+        for(double score : scores)
+            variance += (score - mean) * (score - mean);
+        double error = Math.sqrt(variance / (scores.length - 1));
+        StringBuilder result = new StringBuilder();
+        result.append("  {\n");
+        result.append("    \"benchmark\" : \"").append(name).append("\",\n");
+        result.append("    \"mode\" : \"thrpt\",\n");
+        result.append("    \"threads\" : 1,\n");
+        result.append("    \"warmupIterations\" : ").append(WARMUP_ITERATIONS).append(",\n");
+        result.append("    \"measurementIterations\" : ").append(MEASUREMENT_ITERATIONS).append(",\n");
+        result.append("    \"primaryMetric\" : {\n");
+        result.append("      \"score\" : ").append(mean).append(",\n");
+        result.append("      \"scoreError\" : ").append(error).append(",\n");
+        result.append("      \"scoreUnit\" : \"").append(unit).append("\",\n");
+        result.append("      \"rawData\" : [ [ ");
+        for(int i = 0; i < scores.length; i++)
+            result.append(i > 0 ? ", " : "").append(scores[i]);
+        result.append(" ] ]\n");
+        result.append("    }\n");
+        result.append("  }");
+        results.add(result.toString());
+        System.out.println(String.format("%-48s %16.1f +/- %-14.1f %s", name, mean, error, unit));
+    }
+
+    /**
+     * Measures each basic instruction with each kind of b value, the instruction is
+     * repeated in a loop so that conditions are always met and never skip.
+     * @throws Exception An exception was thrown by a benchmark.
+     */
+    private void benchmarkInstructions() throws Exception {
+        for(int op = Ops.OP_SET; op <= Ops.OP_IFB; op++) {
+            for(int mode = 0; mode < MODES.length; mode++) {
+                char[] image = new char[Cpu.AMOUNT_MEMORY];
+                Arrays.fill(image, (char) 1);
+                int position = 0;
+                image[position++] = 0x8401;              /* SET A, 1 */
+                image[position++] = 0x8821;              /* SET C, 2 */
+                image[position++] = 0x8471;              /* SET J, 1 */
+                image[position++] = 0x7C11;              /* SET B, 0x4000 */
+                image[position++] = 0x4000;
+                image[position++] = 0x7DC1;              /* SET PC, LOOP_ADDRESS */
+                image[position++] = LOOP_ADDRESS;
+                /* A is 1 and C is 2, so IFN and IFG compare C to make the condition hold. */
+                int a = op == Ops.OP_IFN || op == Ops.OP_IFG ? 0x02 : 0x00;
+                position = LOOP_ADDRESS;
+                for(int i = 0; i < LOOP_INSTRUCTIONS; i++) {
+                    image[position++] = (char) (MODES[mode] << 10 | a << 4 | op);
+                    if(MODE_WORDS[mode] >= 0)
+                        image[position++] = (char) MODE_WORDS[mode];
+                }
+                image[position++] = 0x7DC1;              /* SET PC, LOOP_ADDRESS */
+                image[position++] = LOOP_ADDRESS;
+                final int loopCycles = LOOP_INSTRUCTIONS * (Cpu.CYCLES[op] + (MODE_WORDS[mode] >= 0 ? 1 : 0)) + 2;
+                final Cpu cpu = new Cpu();
+                cpu.mount(CharBuffer.wrap(image));
+                measure("Cpu.execute." + Ops.OP_NAMES[op] + "." + MODE_NAMES[mode], "instructions/s", new Task() {
+                    @Override
+                    long run() {
+                        long cycles = cpu.getCycles();
+                        cpu.run(CALL_CYCLES);
+                        return (cpu.getCycles() - cycles) * (LOOP_INSTRUCTIONS + 1) / loopCycles;
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Verifies that optimizing programs whose removed instructions hold label references
+     * assembles them to the expected words.
+     */
+    private static void verifyAsm() {
+        String[] sources = {
+            ":start SET A, [start]\nSET A, 1\nSET PC, start\n",
+            ":start ADD [start], 0\nSET PC, start\n"
+        };
+        int[][] expected = {
+            { 0x8401, 0x81C1 },
+            { 0x81C1 }
+        };
+        for(int i = 0; i < sources.length; i++) {
+            Asm asm = new Asm();
+            asm.optimize = true;
+            int[] words = asm.assemble(sources[i]);
+            if(!Arrays.equals(words, expected[i]))
+                throw new RuntimeException("The optimized program does not assemble to the expected words, expected "
+                                           + Arrays.toString(expected[i]) + " but assembled " + Arrays.toString(words) + "...");
+        }
+        System.out.println("Verified the optimized assembly of removed references...");
+    }
+
+    /**
+     * Verifies that a traced program decodes to the records it executed, with both
+     * the interpreter and compiled blocks, before anything is measured.
+     * @throws Exception An exception was thrown while tracing or decoding.
+     */
+    private static void verifyTracer() throws Exception {
+        /* SET A, 1 and SET B, 0x10 have short literals, so their instruction words are at least 0x8000. */
+        String source = "SET A, 1\nSET B, 0x10\n:loop ADD A, B\nIFG 0x40, A\nSET PC, loop\nDAT 0\n";
+        String[] expected = {
+            "0x0000 SET  0x8401 a=0x0000 b=0x0001 o=0x0000 cycles=1",
+            "0x0001 SET  0xc011 a=0x0000 b=0x0010 o=0x0000 cycles=1",
+            "0x0002 ADD  0x0402 a=0x0001 b=0x0010 o=0x0000 cycles=2",
+            "0x0003 IFG  0x01fe a=0x0040 b=0x0011 o=0x0000 cycles=3",
+            "0x0005 SET  0x89c1 a=0x0000 b=0x0002 o=0x0000 cycles=1",
+            "0x0002 ADD  0x0402 a=0x0011 b=0x0010 o=0x0000 cycles=2",
+            "0x0003 IFG  0x01fe a=0x0040 b=0x0021 o=0x0000 cycles=3",
+            "0x0005 SET  0x89c1 a=0x0000 b=0x0002 o=0x0000 cycles=1",
+            "0x0002 ADD  0x0402 a=0x0021 b=0x0010 o=0x0000 cycles=2",
+            "0x0003 IFG  0x01fe a=0x0040 b=0x0031 o=0x0000 cycles=3",
+            "0x0005 SET  0x89c1 a=0x0000 b=0x0002 o=0x0000 cycles=1",
+            "0x0002 ADD  0x0402 a=0x0031 b=0x0010 o=0x0000 cycles=2",
+            "0x0003 IFG  0x01fe a=0x0040 b=0x0041 o=0x0000 cycles=4"
+        };
+        int[] program = new Asm().assemble(source);
+        File file = File.createTempFile("bench", ".trace");
+        try {
+            for(int jit = 0; jit < 2; jit++) {
+                Cpu cpu = new Cpu();
+                cpu.jit = jit == 1;
+                cpu.tracer = new Tracer(file);
+                cpu.execute(program);
+                cpu.tracer.close();
+                StringBuilder decoded = new StringBuilder();
+                Tracer.decode(file, decoded, 0, 0xFFFF, -1, expected.length);
+                String[] lines = decoded.toString().split("\n");
+                for(int i = 0; i < expected.length; i++)
+                    if(i >= lines.length || !lines[i].trim().endsWith(expected[i]))
+                        throw new RuntimeException("The trace does not decode to the executed records, expected " + expected[i]
+                                                   + " but decoded " + (i < lines.length ? lines[i].trim() : "nothing") + "...");
+            }
+        } finally {
+            file.delete();
+        }
+        System.out.println("Verified the round trip of a trace...");
+    }
+
+    /**
+     * Measures whole programs from the asm directory, each run mounts the program on
+     * a new {@link Cpu} and executes it until it halts.
+     * @param directory The directory of the programs.
+     * @throws Exception An exception was thrown by a benchmark.
+     */
+    private void benchmarkPrograms(File directory) throws Exception {
+        for(String name : new String[] { "xtea", "sys" }) {
+            final int[] program = new Asm().assemble(new FileInputStream(new File(directory, name + ".dasm")));
+            measure("Cpu.execute.program." + name, "programs/s", new Task() {
+                @Override
+                long run() {
+                    new Cpu().execute(program);
+                    return 1;
+                }
+            });
+        }
+    }
+
+    /**
+     * Measures the assembler on synthetic sources of many lines.
+     * @throws Exception An exception was thrown by a benchmark.
+     */
+    private void benchmarkAsm() throws Exception {
+        for(final int lines : SOURCE_LINES) {
+            final String source = createSource(lines);
+            measure("Asm.assemble." + lines, "lines/s", new Task() {
+                @Override
+                long run() {
+                    new Asm().assemble(source);
+                    return lines;
+                }
+            });
+        }
+    }
+
+    /**
+     * Measures the linear and recursive disassemblers on a full image.
+     * @throws Exception An exception was thrown by a benchmark.
+     */
+    private void benchmarkDasm() throws Exception {
+        int[] program = new Asm().assemble(createSource(SOURCE_LINES[SOURCE_LINES.length - 1]));
+        char[] image = new char[Cpu.AMOUNT_MEMORY];
+        for(int i = 0; i < program.length; i++)
+            image[i] = (char) program[i];
+        final CharBuffer words = CharBuffer.wrap(image);
+        final Appendable out = new Appendable() {
+            @Override
+            public Appendable append(CharSequence csq) {
+                return this;
+            }
+
+            @Override
+            public Appendable append(CharSequence csq, int start, int end) {
+                return this;
+            }
+
+            @Override
+            public Appendable append(char c) {
+                return this;
+            }
+        };
+        measure("Dasm.disassemble.linear", "words/s", new Task() {
+            @Override
+            long run() throws IOException {
+                new Dasm().disassemble(words, out);
+                return Cpu.AMOUNT_MEMORY;
+            }
+        });
+        measure("Dasm.disassemble.recursive", "words/s", new Task() {
+            @Override
+            long run() throws IOException {
+                new Dasm().disassemble(words, new int[] { 0 }, out);
+                return Cpu.AMOUNT_MEMORY;
+            }
+        });
+    }
+
+    /**
+     * Measures painting the screen into an off-screen image, every cell is changed
+     * and a frame is published before each paint.
+     * @throws Exception An exception was thrown by a benchmark.
+     */
+    private void benchmarkDisplay() throws Exception {
+        final Cpu cpu = new Cpu();
+        cpu.initialize();
+        final Screen screen = new Screen(cpu);
+        final BufferedImage image = new BufferedImage(Screen.WIDTH, Screen.HEIGHT, BufferedImage.TYPE_INT_RGB);
+        measure("Display.paint", "frames/s", new Task() {
+            private int frame;
+
+            @Override
+            long run() {
+                frame++;
+                for(int i = 0; i < Cpu.AMOUNT_VIDEO_WORDS; i++)
+                    cpu.store(Cpu.VIDEO_RAM + i, (i + frame) * 0x0F21 & 0xFFFF);
+                cpu.publishFrame();
+                Graphics graphics = image.getGraphics();
+                screen.paint(graphics, 0, 0);
+                graphics.dispose();
+                return 1;
+            }
+        });
+    }
+
+    /**
+     * Creates a synthetic source of one word instructions, with a label every 16
+     * lines, a jump to a label every 16 lines and a comment every 10 lines.
+     * @param lines The amount of lines of the source.
+     * @return The source.
+     */
+    private static String createSource(int lines) {
+        Random random = new Random(lines);
+        String[] registers = { "A", "B", "C", "X", "Y", "Z", "I", "J" };
+        StringBuilder source = new StringBuilder();
+        int labels = lines / 16;
+        for(int line = 0; line < lines; line++) {
+            if(line % 10 == 9)
+                source.append("; Line ").append(line).append('\n');
+            else if(line % 16 == 0)
+                source.append(":label").append(line / 16).append('\n');
+            else if(line % 16 == 8)
+                source.append("SET PC, label").append(random.nextInt(labels)).append('\n');
+            else {
+                source.append(Ops.OP_NAMES[1 + random.nextInt(Ops.OP_IFB)]).append(' ').append(registers[random.nextInt(8)]).append(", ");
+                if(random.nextBoolean())
+                    source.append(registers[random.nextInt(8)]);
+                else
+                    source.append("0x").append(Integer.toHexString(random.nextInt(0x20)));
+                source.append('\n');
+            }
+        }
+        return source.toString();
+    }
+
+    /**
+     * Writes the results as a JSON array in the format of JMH.
+     * @param file The file to write to.
+     * @throws IOException An I/O exception was thrown while writing.
+     */
+    private void write(File file) throws IOException {
+        Writer writer = new FileWriter(file);
+        try {
+            writer.write("[\n");
+            for(int i = 0; i < results.size(); i++)
+                writer.write(results.get(i) + (i + 1 < results.size() ? ",\n" : "\n"));
+            writer.write("]\n");
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * The main entry point for the benchmarks.
+     * @param args The file to write the results to, the asm directory and optionally
+     *             a part of the names of the benchmarks to run.
+     * @throws Exception An exception was thrown by a benchmark.
+     */
+    public static void main(String[] args) throws Exception {
+        if(args.length < 2)
+            throw new RuntimeException("Usage: <results file> <asm directory> [benchmark filter]...");
+        verifyAsm();
+        verifyTracer();
+        Bench bench = new Bench(args.length > 2 ? args[2] : "");
+        bench.benchmarkInstructions();
+        bench.benchmarkPrograms(new File(args[1]));
+        bench.benchmarkAsm();
+        bench.benchmarkDasm();
+        bench.benchmarkDisplay();
+        bench.write(new File(args[0]));
+        System.out.println("Wrote " + bench.results.size() + " results to " + args[0] + "...");
+    }
+}
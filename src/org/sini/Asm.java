@@ -2,8 +2,15 @@ package org.sini;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
 
 /**
  * Asm.java
@@ -13,86 +20,127 @@ import java.util.regex.Pattern;
 public final class Asm {
     
     /**
-     * The maximum amount of instructions allowed to compile.
+     * The maximum amount of words allowed to compile, the size of the address space.
      */
-    private static final int MAXIMUM_INSTRUCTIONS = 0x1000;
+    private static final int MAXIMUM_INSTRUCTIONS = Cpu.AMOUNT_MEMORY;
     
     /**
-     * The maximum amount of labels allowed to compile.
+     * The initial capacity of the assembled words, it is doubled as it fills.
      */
-    private static final int MAXIMUM_LABELS = 0xFFFF;
+    private static final int INITIAL_CAPACITY = 0x100;
     
     /**
-     * The pattern to find hexadecimal numbers in the code with.
+     * The instruction word of a jump to a label, SET PC, followed by the address.
      */
-    private final static Pattern HEXADECIMAL_PATTERN = Pattern.compile("0x([^\\]\n+ ]*)");
+    private static final int JUMP = 0x1F << 10 | 0x1C << 4 | Ops.OP_SET;
     
     /**
-     * The pattern to find decimal numbers in the code with.
+     * The name of the directive that emits its numbers and label addresses as words.
      */
-    private final static Pattern DECIMAL_PATTERN = Pattern.compile("\\d+");
+    private static final String DATA = "dat";
     
     /**
-     * The pattern to find instructions in the code with.
+     * The opcodes of the instructions, keyed by their lower case names.
      */
-    private static Pattern INSTRUCTION_PATTERN = Pattern.compile("[^\n ]+");
+    private static final Map<String, Integer> INSTRUCTIONS = new HashMap<String, Integer>();
     
     /**
-     * The pattern to find labels in the code with.
+     * The value opcodes of the registers and special values, keyed by their lower case names.
      */
-    private static Pattern LABEL_PATTERN = Pattern.compile(":([^\n ]*)");
+    private static final Map<String, Integer> VALUES = new HashMap<String, Integer>();
     
     /**
-     * The pattern to find marked labels in the code with.
+     * The assembled words.
      */
-    private static Pattern MARKER_PATTERN = Pattern.compile("#(\\d*)#");
+    private int[] words;
     
     /**
-     * Gets the line number from the index of a character.
-     * @param str The string to get the line numbers from.
-     * @param maxIndex The maximum index in the string.
-     * @return The line number.
+     * The amount of assembled words.
      */
-    private static int getLineNumber(String str, int maxIndex) {
-        int lineNumber = 1;
-        int curIndex = -1;
-        while((curIndex = str.indexOf('\n', curIndex + 1)) < maxIndex && curIndex != -1) {
-            lineNumber++;
-        }
-        return lineNumber;
-    }
+    private int amountWords;
     
     /**
-     * Looks up an operator in the operators array.
-     * @param str The string to lookup.
-     * @return The opcode of the operator.
+     * The source lines of the assembled words, indexed by position.
      */
-    private static int lookupInstruction(String str) {
-        for(int i = 0; i < Ops.OP_NAMES.length; i++)
-            if(Ops.OP_NAMES[i] != null && Ops.OP_NAMES[i].toLowerCase().equals(str))
-                return i;
-        return -1;
-    }
+    private int[] lines;
+    
+    /**
+     * The final addresses of the positions once assembled, the last being the amount of words.
+     */
+    private int[] addresses;
+    
+    /**
+     * The ids of the labels, keyed by their names.
+     */
+    private Map<String, Integer> labelIds;
+    
+    /**
+     * The names of the labels, indexed by their ids.
+     */
+    private List<String> labelNames;
+    
+    /**
+     * The addresses of the labels, indexed by their ids, or -1 if a label has not been defined.
+     */
+    private int[] labelAddresses;
+    
+    /**
+     * The lines that the labels were first referenced on, indexed by their ids.
+     */
+    private int[] labelLines;
+    
+    /**
+     * The label references to resolve, the position of the word, the id of the label and the
+     * position of the instruction if the reference may be relaxed to a short literal or -1.
+     */
+    private int[] references;
+    
+    /**
+     * The amount of label references.
+     */
+    private int amountReferences;
+    
+    /**
+     * The positions of the assembled instructions.
+     */
+    private int[] instructions;
+    
+    /**
+     * The amount of assembled instructions.
+     */
+    private int amountInstructions;
+    
+    /**
+     * The instructions that directly follow the previous instruction, rather than data,
+     * indexed by instruction with the end of the code last.
+     */
+    private boolean[] contiguous;
+    
+    /**
+     * The amount of words saved by the peephole optimizer.
+     */
+    private int wordsSaved;
+    
+    /**
+     * The amount of cycles saved by the peephole optimizer, counting each instruction
+     * as executed once.
+     */
+    private int cyclesSaved;
     
     /**
-     * Looks up an operator in the operators array.
-     * @param str The string to lookup.
-     * @param The value is represented as a label.
-     * @return The opcode of the operator.
+     * The {@link Asm} will rewrite the instructions into cheaper ones before they are
+     * emitted. The rewrites assume that the code does not read or modify itself.
      */
-    private static int lookupValue(String str, boolean isLabel) {
-        Matcher matcher = DECIMAL_PATTERN.matcher(str);
-        if(matcher.find()) {
-            int value = Integer.parseInt(matcher.group());
-            if(str.matches("^" + DECIMAL_PATTERN.pattern() + "$") && value >= 0x0 && value <= 0x1F && !isLabel)
-                return value + 0x20;
-            else
-                str = matcher.replaceAll("%nw%");
-        }       
-        for(int i = 0; i < Ops.V_NAMES.length; i++)
-            if(Ops.V_NAMES[i] != null && Ops.V_NAMES[i].toLowerCase().equals(str))
-                return i;
-        return -1;
+    boolean optimize;
+    
+    static {
+        for(int i = 0; i < Ops.OP_NAMES.length; i++)
+            if(Ops.OP_NAMES[i] != null)
+                INSTRUCTIONS.put(Ops.OP_NAMES[i].toLowerCase(), i);
+        for(int i = 0; i < 0x08; i++)
+            VALUES.put(Ops.V_NAMES[i].toLowerCase(), i);
+        for(int i = 0x18; i < 0x1E; i++)
+            VALUES.put(Ops.V_NAMES[i].toLowerCase(), i);
     }
     
     /**
@@ -101,113 +149,554 @@ public final class Asm {
      * @return The assembled instructions.
      */
     public int[] assemble(InputStream is) throws IOException {
-        String str = "";
+        Reader reader = new InputStreamReader(is, "ISO-8859-1");
+        StringBuilder code = new StringBuilder();
+        char[] buffer = new char[8192];
         int read;
-        while((read = is.read()) != -1) {
-            str += (char) read;
-        }
-        return assemble(str);
+        while((read = reader.read(buffer)) != -1)
+            code.append(buffer, 0, read);
+        return assemble(code.toString());
     }
     
     /**
-     * Assembles the code into an instruction list.
+     * Assembles the code into an instruction list. The first pass tokenizes the code,
+     * emits the words and defines the labels, the second pass relaxes and resolves the
+     * label references.
      * @param code The code to assemble into instructions.
      * @return The assembled instructions.
      */
-    public int[] assemble(String code) {      
-        code = code.toLowerCase().replaceAll("[^\\w\\[\\]+\n;: ]", "").replaceAll(";[^\n]*", "");
-        Matcher matcher = LABEL_PATTERN.matcher(code);
-        int labelOffset = 0;
-        while(matcher.find()) {
-            if(labelOffset > MAXIMUM_LABELS)
-                throw new RuntimeException("Label overflow");
-            String name = matcher.group(1);
-            if(name.length() < 4)
-                throw new RuntimeException("Illegal label, " + '\'' + name + '\'' + ", on line " + getLineNumber(code, matcher.start()));
-            code = code.replaceFirst(matcher.group(), ":" + labelOffset);
-            if(code.matches(matcher.group() + " "))
-                throw new RuntimeException("Duplicate label, " + '\'' + name + '\'' + ", on line " + getLineNumber(code, code.indexOf(matcher.group())));
-            Matcher referenceMatcher = Pattern.compile(name + "[\n ]").matcher(code);
-            while(referenceMatcher.find()) {
-                code = code.substring(0, referenceMatcher.start()) + "#" + labelOffset++ + "#" + code.substring(referenceMatcher.end() - 1);
-            }
-        }       
-        while((matcher = HEXADECIMAL_PATTERN.matcher(code)).find()) {          
-            String value = matcher.group(1);
-            try {      
-                code = code.substring(0, matcher.start()) + Integer.valueOf(value, 16) + code.substring(matcher.end());              
-            } catch(Exception ex) {
-                throw new RuntimeException("Invalid hexidecimal literal, " + '\'' + matcher.group() + '\'' + ", on line " + getLineNumber(code, matcher.start(1)));
+    public int[] assemble(String code) {
+        words = new int[INITIAL_CAPACITY];
+        lines = new int[INITIAL_CAPACITY];
+        amountWords = 0;
+        labelIds = new HashMap<String, Integer>();
+        labelNames = new ArrayList<String>();
+        labelAddresses = new int[16];
+        labelLines = new int[16];
+        references = new int[48];
+        amountReferences = 0;
+        instructions = new int[INITIAL_CAPACITY];
+        amountInstructions = 0;
+        wordsSaved = 0;
+        cyclesSaved = 0;
+        Lexer lexer = new Lexer(code);
+        lexer.next();
+        while(lexer.type != Lexer.END) {
+            if(lexer.type == Lexer.LABEL) {
+                int id = getLabel(lexer);
+                if(labelAddresses[id] >= 0)
+                    throw lexer.error("Duplicate label, '" + lexer.text + '\'');
+                labelAddresses[id] = amountWords;
+                lexer.next();
+                continue;
             }
-        }
-        int[] labels = new int[MAXIMUM_LABELS];
-        int counter = 0;
-        matcher = INSTRUCTION_PATTERN.matcher(code);
-        while(matcher.find()) {
-            if(matcher.group().startsWith(":")) {
-                int labelId = Integer.parseInt(matcher.group().substring(1));
-                labels[labelId] = counter;
+            if(lexer.type == Lexer.NAME && lexer.text.equals(DATA)) {
+                lexer.next();
+                do {
+                    word(lexer);
+                } while(lexer.type == Lexer.NUMBER || lexer.type == Lexer.NAME && !INSTRUCTIONS.containsKey(lexer.text) && !lexer.text.equals(DATA));
                 continue;
             }
-            int insnOpcode = lookupInstruction(matcher.group());
-            if(insnOpcode < 0)
-                throw new RuntimeException("Unknown instruction, " + '\'' + matcher.group() + '\'' + ", on line " + getLineNumber(code, matcher.start(0)));
-            counter++;
-            if(counter >= MAXIMUM_INSTRUCTIONS)
-                throw new RuntimeException("Instruction overflow");
+            if(lexer.type != Lexer.NAME || !INSTRUCTIONS.containsKey(lexer.text))
+                throw lexer.error("Unknown instruction, '" + getText(lexer) + '\'');
+            int insnOpcode = INSTRUCTIONS.get(lexer.text);
+            int position = emit(0, lexer);
+            if(amountInstructions == instructions.length) {
+                int[] newInstructions = new int[instructions.length * 2];
+                System.arraycopy(instructions, 0, newInstructions, 0, amountInstructions);
+                instructions = newInstructions;
+            }
+            instructions[amountInstructions++] = position;
             int arguments = (insnOpcode & 0xF) == 0 ? 1 : 2;
             for(int argument = 0; argument < arguments; argument++) {
-                if(!matcher.find())
-                    throw new RuntimeException("Expected argument " + (argument + 1) + " after " + Ops.OP_NAMES[insnOpcode] + " on line " + getLineNumber(code, code.length()));
-                String matcherValue = matcher.group();
-                Matcher markerMatcher = MARKER_PATTERN.matcher(matcherValue);
-                boolean isLabel = false;
-                if((isLabel = markerMatcher.find())) {
-                    counter++;
+                if(lexer.next() == Lexer.END)
+                    throw lexer.error("Expected argument " + (argument + 1) + " after " + Ops.OP_NAMES[insnOpcode]);
+                int reference = amountReferences;
+                int valueOpcode = value(lexer);
+                /* 
+                 * Only a source label may be relaxed, a literal destination is executed
+                 * as its next word and a short literal a is swapped with b. 
+                 */
+                if(valueOpcode == 0x1F && amountReferences > reference && ((insnOpcode & 0xF) == 0 || argument == 1 && (insnOpcode >>> 4 & 0x3F) < 0x20))
+                    references[reference * 3 + 2] = position;
+                insnOpcode |= (insnOpcode & 0xF) == 0 ? valueOpcode << 10 : valueOpcode << (argument == 0 ? 4 : 10);
+            }
+            words[position] = insnOpcode;
+            lexer.next();
+        }
+        for(int i = 0; i < amountReferences; i++) {
+            int id = references[i * 3 + 1];
+            if(labelAddresses[id] < 0)
+                throw new RuntimeException("Undefined label, '" + labelNames.get(id) + "', on line " + labelLines[id]);
+        }
+        boolean[] removed = new boolean[amountWords];
+        int unoptimizedWords = 0;
+        if(optimize) {
+            unoptimizedWords = relax(new boolean[amountWords])[amountWords];
+            optimize(removed);
+        }
+        addresses = relax(removed);
+        if(optimize)
+            wordsSaved = unoptimizedWords - addresses[amountWords];
+        int[] programInstructions = new int[addresses[amountWords]];
+        for(int i = 0; i < amountReferences; i++) {
+            int position = references[i * 3];
+            int address = addresses[labelAddresses[references[i * 3 + 1]]];
+            if(removed[position]) {
+                /* A reference that was not relaxed is only removed along with its whole instruction. */
+                int insnPosition = references[i * 3 + 2];
+                if(insnPosition >= 0 && !removed[insnPosition])
+                    words[insnPosition] = words[insnPosition] & 0x3FF | address + 0x20 << 10;
+            } else
+                words[position] = address;
+        }
+        for(int i = 0; i < amountWords; i++)
+            if(!removed[i])
+                programInstructions[addresses[i]] = words[i];
+        return programInstructions;
+    }
+    
+    /**
+     * Relaxes the label references that resolve to an address below 0x20 into short
+     * literals. Relaxing a reference removes its next word, which can move further
+     * labels below 0x20, so the addresses are resolved again until none change.
+     * @param removed The positions of the words that have been removed.
+     * @return The final addresses of the positions, the last being the amount of words.
+     */
+    private int[] relax(boolean[] removed) {
+        int[] addresses = new int[amountWords + 1];
+        boolean changed = true;
+        while(changed) {
+            changed = false;
+            int address = 0;
+            for(int i = 0; i < amountWords; i++) {
+                addresses[i] = address;
+                if(!removed[i])
+                    address++;
+            }
+            addresses[amountWords] = address;
+            for(int i = 0; i < amountReferences; i++) {
+                int position = references[i * 3];
+                if(references[i * 3 + 2] < 0 || removed[position])
                     continue;
-                }
-                int valueOpcode = lookupValue(matcherValue, isLabel);
-                if(valueOpcode < 0)
-                    throw new RuntimeException("Unknown value, " + '\'' + matcher.group() + '\'' + ", on line " + getLineNumber(code, matcher.start(0)));                
-                if(Ops.V_NAMES[valueOpcode].indexOf("%nw%") > -1) {
-                    Matcher decimalMatcher = DECIMAL_PATTERN.matcher(matcher.group());
-                    if(!decimalMatcher.find())
-                        throw new RuntimeException("PANIC, Logic Error!");
-                    int decimalValue = Integer.parseInt(decimalMatcher.group());
-                    if(decimalValue > 65535 || decimalValue < 0)
-                        throw new RuntimeException("Undetermined overflow error of uncertainty, " + '\'' + "0x" + Integer.toHexString(decimalValue) + '\'' + ", on line " + getLineNumber(code, decimalMatcher.start(0)));
-                    counter++;
+                if(addresses[labelAddresses[references[i * 3 + 1]]] < 0x20) {
+                    removed[position] = true;
+                    changed = true;
                 }
             }
         }
-        code = code.replaceAll(":[^\n ]+", "");
-        int[] instructions = new int[MAXIMUM_INSTRUCTIONS];
-        counter = 0;
-        matcher = INSTRUCTION_PATTERN.matcher(code);
-        while(matcher.find()) {
-            int insnOpcode = lookupInstruction(matcher.group());          
-            int currentCounter = counter++;
-            int arguments = (insnOpcode & 0xF) == 0 ? 1 : 2;
-            for(int argument = 0; argument < arguments; argument++) { 
-                matcher.find();
-                String matcherValue = matcher.group();
-                Matcher markerMatcher = MARKER_PATTERN.matcher(matcherValue);
-                boolean isLabel = false;
-                if((isLabel = markerMatcher.find()))
-                    matcherValue = markerMatcher.replaceAll("" + labels[Integer.parseInt(markerMatcher.group(1))]);
-                int valueOpcode = lookupValue(matcherValue, isLabel);               
-                if(Ops.V_NAMES[valueOpcode].indexOf("%nw%") > -1) {
-                    Matcher decimalMatcher = DECIMAL_PATTERN.matcher(matcherValue);
-                    decimalMatcher.find();
-                    int decimalValue = Integer.parseInt(decimalMatcher.group());                  
-                    instructions[counter++] = decimalValue;
+        return addresses;
+    }
+    
+    /**
+     * Rewrites the instructions into cheaper ones. Adding or subtracting 0, setting a
+     * register to itself, setting a register that is set again by the next instruction
+     * and jumping to the next instruction are removed, multiplying or dividing by a
+     * power of two is shifted instead and jumps to jumps are sent to the last jump.
+     * An instruction that may be skipped is never removed, as the skip would then
+     * fall on the instruction after it.
+     * @param removed The positions of the words that have been removed.
+     */
+    private void optimize(boolean[] removed) {
+        int[] referenceAt = new int[amountWords];
+        Arrays.fill(referenceAt, -1);
+        for(int i = 0; i < amountReferences; i++)
+            referenceAt[references[i * 3]] = i;
+        int[] instructionAt = new int[amountWords + 1];
+        Arrays.fill(instructionAt, -1);
+        for(int i = 0; i < amountInstructions; i++)
+            instructionAt[instructions[i]] = i;
+        instructionAt[amountWords] = amountInstructions;
+        boolean[] labelled = new boolean[amountWords + 1];
+        for(int i = 0; i < labelNames.size(); i++)
+            labelled[labelAddresses[i]] = true;
+        contiguous = new boolean[amountInstructions + 1];
+        for(int i = 0; i <= amountInstructions; i++) {
+            int end = i == 0 ? 0 : instructions[i - 1] + getLength(instructions[i - 1]);
+            contiguous[i] = (i < amountInstructions ? instructions[i] : amountWords) == end;
+        }
+        for(int i = 0; i < amountInstructions; i++) {
+            int position = instructions[i];
+            /* An instruction after data may be skipped by the data. */
+            boolean skippable = !contiguous[i] || i > 0 && isCondition(words[instructions[i - 1]]);
+            int insn = words[position];
+            int a = insn >>> 4 & 0x3F;
+            int b = insn >>> 10;
+            int next = i + 1 < amountInstructions && contiguous[i + 1] ? words[instructions[i + 1]] : 0;
+            switch(insn & 0xF) {
+                
+                case Ops.OP_SET:
+                    if(skippable || !isRegister(a))
+                        break;
+                    if(a == b)
+                        remove(i, removed);
+                    else if((next & 0x3FF) == (a << 4 | Ops.OP_SET) && b != 0x18 && b != 0x1A && !reads(next >>> 10, a))
+                        remove(i, removed);
+                    else if(isRegister(b) && next == (a << 10 | b << 4 | Ops.OP_SET) && !labelled[instructions[i + 1]])
+                        remove(++i, removed);
+                    break;
+                    
+                case Ops.OP_ADD:
+                case Ops.OP_SUB:
+                    if(!skippable && b == 0x20 && (a < 0x18 || a >= 0x1B && a <= 0x1E))
+                        remove(i, removed);
+                    break;
+                    
+                case Ops.OP_MUL:
+                case Ops.OP_DIV:
+                    /* The order that O and a are written in differs for a multiplication. */
+                    if(a == 0x1D || a >= 0x1F)
+                        break;
+                    int wordPosition = position + (Cpu.hasNextWord(a) ? 2 : 1);
+                    int value;
+                    if(b == 0x1F && referenceAt[wordPosition] < 0)
+                        value = words[wordPosition];
+                    else if(b >= 0x20)
+                        value = b - 0x20;
+                    else
+                        break;
+                    if(value < 2 || (value & value - 1) != 0 || b >= 0x20 && (insn & 0xF) == Ops.OP_MUL)
+                        break;
+                    int cycles = getCycles(position);
+                    words[position] = (Integer.numberOfTrailingZeros(value) + 0x20) << 10 | a << 4 | ((insn & 0xF) == Ops.OP_MUL ? Ops.OP_SHL : Ops.OP_SHR);
+                    if(b == 0x1F)
+                        removed[wordPosition] = true;
+                    cyclesSaved += cycles - getCycles(position);
+                    break;
+            }
+        }
+        for(int i = 0; i < amountInstructions; i++) {
+            int position = instructions[i];
+            if(removed[position] || words[position] != JUMP || referenceAt[position + 1] < 0)
+                continue;
+            int reference = referenceAt[position + 1];
+            int id = references[reference * 3 + 1];
+            int cycles = 0;
+            int next = contiguous[i + 1] ? getInstruction(i + 1, removed) : -1;
+            for(int follow = 0; ; follow++) {
+                int target = instructionAt[labelAddresses[id]] < 0 ? -1 : getInstruction(instructionAt[labelAddresses[id]], removed);
+                if(target >= 0 && target == next) {
+                    if(contiguous[i] && (i == 0 || !isCondition(words[instructions[i - 1]])))
+                        remove(i, removed);
+                    break;
                 }
-                insnOpcode |= (insnOpcode & 0xF) == 0 ? valueOpcode << 10 : valueOpcode << (argument == 0 ? 4 : 10);
+                if(follow == amountInstructions) {
+                    /* The jumps loop forever, so they are left as they are. */
+                    id = references[reference * 3 + 1];
+                    cycles = 0;
+                    break;
+                }
+                if(target < 0 || target == amountInstructions || words[instructions[target]] != JUMP || referenceAt[instructions[target] + 1] < 0)
+                    break;
+                cycles += getCycles(instructions[target]);
+                id = references[referenceAt[instructions[target] + 1] * 3 + 1];
             }
-            instructions[currentCounter] = insnOpcode;
+            references[reference * 3 + 1] = id;
+            cyclesSaved += cycles;
         }
-        int[] programInstructions = new int[counter];
-        System.arraycopy(instructions, 0, programInstructions, 0, programInstructions.length);
-        return programInstructions;
     }
-}
\ No newline at end of file
+    
+    /**
+     * Gets the first instruction at or after an instruction that has not been removed.
+     * @param instruction The index of the instruction.
+     * @param removed The positions of the words that have been removed.
+     * @return The index of the instruction, the amount of instructions if there is none
+     *         or -1 if data is reached first.
+     */
+    private int getInstruction(int instruction, boolean[] removed) {
+        for(; instruction < amountInstructions && removed[instructions[instruction]]; instruction++)
+            if(!contiguous[instruction + 1])
+                return -1;
+        return instruction;
+    }
+    
+    /**
+     * Removes an instruction and its next words.
+     * @param instruction The index of the instruction.
+     * @param removed The positions of the words that have been removed.
+     */
+    private void remove(int instruction, boolean[] removed) {
+        int position = instructions[instruction];
+        int length = getLength(position);
+        for(int i = 0; i < length; i++)
+            removed[position + i] = true;
+        cyclesSaved += getCycles(position);
+    }
+    
+    /**
+     * Gets the length of an assembled instruction.
+     * @param position The position of the instruction.
+     * @return The amount of words of the instruction.
+     */
+    private int getLength(int position) {
+        int insn = words[position];
+        int length = Cpu.hasNextWord(insn >>> 10) ? 2 : 1;
+        if((insn & 0xF) != 0 && Cpu.hasNextWord(insn >>> 4 & 0x3F))
+            length++;
+        return length;
+    }
+    
+    /**
+     * Gets the amount of cycles that {@link Cpu} charges for an assembled instruction.
+     * @param position The position of the instruction.
+     * @return The amount of cycles.
+     */
+    private int getCycles(int position) {
+        int insn = words[position];
+        int cycles = (insn & 0xF) != 0 ? Cpu.CYCLES[insn & 0xF] : (insn >>> 4 & 0x3F) == Ops.OP_JSR ? 2 : 0;
+        return cycles + getLength(position) - 1;
+    }
+    
+    /**
+     * Gets if an instruction word is a condition, which skips the next instruction.
+     * @param insn The instruction word.
+     * @return If the instruction is an IFE, IFN, IFG or IFB.
+     */
+    private static boolean isCondition(int insn) {
+        return (insn & 0xC) == 0xC;
+    }
+    
+    /**
+     * Gets if a value opcode is a register that can be read and written without side effects.
+     * @param op The opcode.
+     * @return If the value is A to J, SP or O.
+     */
+    private static boolean isRegister(int op) {
+        return op < 0x08 || op == 0x1B || op == 0x1D;
+    }
+    
+    /**
+     * Gets if a value opcode reads a register.
+     * @param op The opcode.
+     * @param register The opcode of the register.
+     * @return If reading the value reads the register.
+     */
+    private static boolean reads(int op, int register) {
+        if(op == register)
+            return true;
+        if(register < 0x08)
+            return op == 0x08 + register || op == 0x10 + register;
+        return register == 0x1B && op >= 0x18 && op <= 0x1A;
+    }
+    
+    /**
+     * Gets the symbols of the last assembled code, the source line of every word and
+     * the addresses of the labels. Where several labels share an address the first
+     * defined is kept.
+     * @param source The name of the source file of the code.
+     * @return The symbols.
+     */
+    public Symbols getSymbols(String source) {
+        int[] addressLines = new int[addresses[amountWords]];
+        for(int i = 0; i < amountWords; i++)
+            if(addresses[i + 1] != addresses[i])
+                addressLines[addresses[i]] = lines[i];
+        NavigableMap<Integer, String> labels = new TreeMap<Integer, String>();
+        for(int i = 0; i < labelNames.size(); i++) {
+            int address = addresses[labelAddresses[i]];
+            if(!labels.containsKey(address))
+                labels.put(address, labelNames.get(i));
+        }
+        return Symbols.create(source, addressLines, labels);
+    }
+    
+    /**
+     * Gets the amount of words saved by the peephole optimizer in the last assembly.
+     * @return The amount of words.
+     */
+    public int getWordsSaved() {
+        return wordsSaved;
+    }
+    
+    /**
+     * Gets the amount of cycles saved by the peephole optimizer in the last assembly,
+     * counting each instruction as executed once.
+     * @return The amount of cycles.
+     */
+    public int getCyclesSaved() {
+        return cyclesSaved;
+    }
+    
+    /**
+     * Parses the value at the current token.
+     * @param lexer The {@link Lexer} at the first token of the value.
+     * @return The value opcode, its next word is emitted.
+     */
+    private int value(Lexer lexer) {
+        switch(lexer.type) {
+            
+            case Lexer.NAME:
+                if(VALUES.containsKey(lexer.text))
+                    return VALUES.get(lexer.text);
+                reference(lexer);
+                return 0x1F;
+                
+            case Lexer.NUMBER:
+                if(lexer.value <= 0x1F)
+                    return lexer.value + 0x20;
+                emit(lexer.value, lexer);
+                return 0x1F;
+                
+            case Lexer.OPEN:
+                lexer.next();
+                int register = getRegister(lexer);
+                if(register >= 0) {
+                    if(lexer.next() == Lexer.CLOSE)
+                        return 0x08 + register;
+                    expect(lexer, Lexer.PLUS);
+                    lexer.next();
+                    word(lexer);
+                    expect(lexer, Lexer.CLOSE);
+                    return 0x10 + register;
+                }
+                word(lexer);
+                if(lexer.type == Lexer.CLOSE)
+                    return 0x1E;
+                expect(lexer, Lexer.PLUS);
+                lexer.next();
+                register = getRegister(lexer);
+                if(register < 0)
+                    throw lexer.error("Expected a register, '" + getText(lexer) + '\'');
+                lexer.next();
+                expect(lexer, Lexer.CLOSE);
+                return 0x10 + register;
+        }
+        throw lexer.error("Unknown value, '" + getText(lexer) + '\'');
+    }
+    
+    /**
+     * Parses a number or label reference as a word and reads the token after it.
+     * @param lexer The {@link Lexer} at the number or label reference.
+     */
+    private void word(Lexer lexer) {
+        if(lexer.type == Lexer.NUMBER)
+            emit(lexer.value, lexer);
+        else if(lexer.type == Lexer.NAME && !VALUES.containsKey(lexer.text))
+            reference(lexer);
+        else
+            throw lexer.error("Unknown value, '" + getText(lexer) + '\'');
+        lexer.next();
+    }
+    
+    /**
+     * Checks the type of the current token.
+     * @param lexer The {@link Lexer}.
+     * @param type The expected type of the token.
+     */
+    private static void expect(Lexer lexer, int type) {
+        if(lexer.type != type)
+            throw lexer.error("Expected '" + (type == Lexer.CLOSE ? "]" : "+") + "' but found '" + getText(lexer) + '\'');
+    }
+    
+    /**
+     * Gets the register of the current token.
+     * @param lexer The {@link Lexer}.
+     * @return The index of the register, or -1 if the token is not a register.
+     */
+    private static int getRegister(Lexer lexer) {
+        if(lexer.type != Lexer.NAME || !VALUES.containsKey(lexer.text))
+            return -1;
+        int register = VALUES.get(lexer.text);
+        return register < 0x08 ? register : -1;
+    }
+    
+    /**
+     * Gets the text of the current token for an error message.
+     * @param lexer The {@link Lexer}.
+     * @return The text of the token.
+     */
+    private static String getText(Lexer lexer) {
+        switch(lexer.type) {
+            
+            case Lexer.END:
+                return "end of file";
+                
+            case Lexer.NUMBER:
+                return "" + lexer.value;
+                
+            case Lexer.LABEL:
+                return ":" + lexer.text;
+                
+            case Lexer.OPEN:
+                return "[";
+                
+            case Lexer.CLOSE:
+                return "]";
+                
+            case Lexer.PLUS:
+                return "+";
+                
+            default:
+                return lexer.text;
+        }
+    }
+    
+    /**
+     * Emits a word.
+     * @param word The word.
+     * @param lexer The {@link Lexer}, for the position of an error.
+     * @return The position of the word.
+     */
+    private int emit(int word, Lexer lexer) {
+        if(amountWords == MAXIMUM_INSTRUCTIONS)
+            throw lexer.error("Instruction overflow");
+        if(amountWords == words.length) {
+            int[] newWords = new int[words.length * 2];
+            System.arraycopy(words, 0, newWords, 0, amountWords);
+            words = newWords;
+            int[] newLines = new int[lines.length * 2];
+            System.arraycopy(lines, 0, newLines, 0, amountWords);
+            lines = newLines;
+        }
+        words[amountWords] = word;
+        lines[amountWords] = lexer.tokenLine;
+        return amountWords++;
+    }
+    
+    /**
+     * Emits a label reference as a next word, the word is resolved once every label
+     * has been defined.
+     * @param lexer The {@link Lexer} at the label reference.
+     */
+    private void reference(Lexer lexer) {
+        int id = getLabel(lexer);
+        int position = emit(0, lexer);
+        if(amountReferences * 3 == references.length) {
+            int[] newReferences = new int[references.length * 2];
+            System.arraycopy(references, 0, newReferences, 0, references.length);
+            references = newReferences;
+        }
+        references[amountReferences * 3] = position;
+        references[amountReferences * 3 + 1] = id;
+        references[amountReferences * 3 + 2] = -1;
+        amountReferences++;
+    }
+    
+    /**
+     * Gets the id of the label named by the current token, adding the label if it
+     * has not been seen before.
+     * @param lexer The {@link Lexer} at the label definition or reference.
+     * @return The id of the label.
+     */
+    private int getLabel(Lexer lexer) {
+        Integer id = labelIds.get(lexer.text);
+        if(id != null)
+            return id;
+        if(VALUES.containsKey(lexer.text) || INSTRUCTIONS.containsKey(lexer.text) || lexer.text.equals(DATA))
+            throw lexer.error("Illegal label, '" + lexer.text + '\'');
+        id = labelNames.size();
+        labelIds.put(lexer.text, id);
+        labelNames.add(lexer.text);
+        if(id == labelAddresses.length) {
+            int[] newAddresses = new int[id * 2];
+            System.arraycopy(labelAddresses, 0, newAddresses, 0, id);
+            labelAddresses = newAddresses;
+            int[] newLines = new int[id * 2];
+            System.arraycopy(labelLines, 0, newLines, 0, id);
+            labelLines = newLines;
+        }
+        labelAddresses[id] = -1;
+        labelLines[id] = lexer.tokenLine;
+        return id;
+    }
+}
@@ -0,0 +1,49 @@
+package org.sini;
+
+/**
+ * Block.java
+ * @version 1.0.0
+ * @author RuneTekk Development (SiniSoul)
+ */
+public abstract class Block {
+
+    /**
+     * Constructs a new {@link Block};
+     */
+    protected Block() {}
+
+    /**
+     * Executes the compiled basic block, leaving the program counter at the next
+     * instruction to execute.
+     * @param cpu The {@link Cpu} to execute the block on.
+     * @param m The pages of memory of the {@link Cpu}.
+     * @param r The registers of the {@link Cpu}.
+     * @return The amount of cycles taken.
+     */
+    public abstract int execute(Cpu cpu, char[][] m, char[] r);
+
+    /**
+     * Writes a word to the memory of a {@link Cpu} from a compiled block.
+     * @param cpu The {@link Cpu} to write to.
+     * @param address The address of the word.
+     * @param value The value to write.
+     * @return If the write modified a decoded instruction.
+     */
+    protected static boolean write(Cpu cpu, int address, int value) {
+        return cpu.store(address, value);
+    }
+
+    /**
+     * Records an instruction of a compiled block with the {@link Tracer} of a {@link Cpu}.
+     * @param cpu The traced {@link Cpu}.
+     * @param r The registers of the {@link Cpu}.
+     * @param insn The address of the instruction in the upper half and the
+     *             instruction word in the lower half.
+     * @param a The value of a.
+     * @param b The value of b.
+     * @param cycles The cycles charged for the instruction.
+     */
+    protected static void trace(Cpu cpu, char[] r, int insn, int a, int b, int cycles) {
+        cpu.tracer.record(insn >>> 16, insn & 0xFFFF, a, b, r[Cpu.O], cycles);
+    }
+}
@@ -0,0 +1,326 @@
+package org.sini;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * ClassFile.java
+ * @version 1.0.0
+ * @author RuneTekk Development (SiniSoul)
+ */
+final class ClassFile {
+
+    /**
+     * The major version of the class files written, version 49 classes are checked
+     * by the type inferencing verifier and do not need stack map frames.
+     */
+    private static final int MAJOR_VERSION = 49;
+
+    /**
+     * The public access flag.
+     */
+    static final int ACC_PUBLIC = 0x0001;
+
+    /**
+     * The final access flag.
+     */
+    static final int ACC_FINAL = 0x0010;
+
+    /**
+     * The super access flag.
+     */
+    static final int ACC_SUPER = 0x0020;
+
+    /**
+     * The opcodes used by the {@link Jit}.
+     */
+    static final int ICONST_0 = 0x03, BIPUSH = 0x10, SIPUSH = 0x11, LDC = 0x12, LDC_W = 0x13, ILOAD = 0x15,
+                     ALOAD = 0x19, AALOAD = 0x32, CALOAD = 0x34, ISTORE = 0x36, CASTORE = 0x55, POP = 0x57,
+                     IADD = 0x60, ISUB = 0x64, IMUL = 0x68, IDIV = 0x6C, IREM = 0x70, ISHL = 0x78, IUSHR = 0x7C,
+                     IAND = 0x7E, IOR = 0x80, IXOR = 0x82, IFEQ = 0x99, IFNE = 0x9A, IFGE = 0x9C, IF_ICMPEQ = 0x9F,
+                     IF_ICMPNE = 0xA0, IF_ICMPLE = 0xA4, GOTO = 0xA7, IRETURN = 0xAC, RETURN = 0xB1,
+                     INVOKESPECIAL = 0xB7, INVOKESTATIC = 0xB8;
+
+    /**
+     * The constant pool tags.
+     */
+    private static final int CONSTANT_UTF8 = 1, CONSTANT_INTEGER = 3, CONSTANT_CLASS = 7, CONSTANT_METHODREF = 10,
+                             CONSTANT_NAME_AND_TYPE = 12;
+
+    /**
+     * The written constant pool entries.
+     */
+    private ByteArrayOutputStream pool = new ByteArrayOutputStream();
+
+    /**
+     * The indexes of the constant pool entries that have been written.
+     */
+    private Map<String, Integer> constants = new HashMap<String, Integer>();
+
+    /**
+     * The amount of constant pool entries plus one.
+     */
+    private int poolSize = 1;
+
+    /**
+     * The written methods.
+     */
+    private ByteArrayOutputStream methods = new ByteArrayOutputStream();
+
+    /**
+     * The amount of methods written.
+     */
+    private int amountMethods;
+
+    /**
+     * The code of the method currently being written.
+     */
+    private byte[] code = new byte[256];
+
+    /**
+     * The length of the code of the method currently being written.
+     */
+    private int length;
+
+    /**
+     * The internal name of the class.
+     */
+    private String name;
+
+    /**
+     * The internal name of the super class.
+     */
+    private String superName;
+
+    /**
+     * Constructs a new {@link ClassFile};
+     * @param name The internal name of the class.
+     * @param superName The internal name of the super class.
+     */
+    ClassFile(String name, String superName) {
+        this.name = name;
+        this.superName = superName;
+    }
+
+    /**
+     * Adds a constant to the pool if it was not already added.
+     * @param key The unique key of the constant.
+     * @param tag The tag of the constant.
+     * @param a The first value of the constant.
+     * @param b The second value of the constant, or -1 if it has one value.
+     * @return The index of the constant.
+     */
+    private int constant(String key, int tag, int a, int b) {
+        Integer index = constants.get(key);
+        if(index != null)
+            return index;
+        pool.write(tag);
+        if(tag == CONSTANT_INTEGER) {
+            pool.write(a >>> 24);
+            pool.write(a >>> 16);
+        }
+        pool.write(a >>> 8);
+        pool.write(a);
+        if(b >= 0) {
+            pool.write(b >>> 8);
+            pool.write(b);
+        }
+        constants.put(key, poolSize);
+        return poolSize++;
+    }
+
+    /**
+     * Adds a UTF-8 constant to the pool.
+     * @param str The string.
+     * @return The index of the constant.
+     */
+    int utf8(String str) {
+        Integer index = constants.get("U" + str);
+        if(index != null)
+            return index;
+        try {
+            DataOutputStream os = new DataOutputStream(pool);
+            os.write(CONSTANT_UTF8);
+            os.writeUTF(str);
+        } catch(IOException ex) {
+            throw new RuntimeException(ex);
+        }
+        constants.put("U" + str, poolSize);
+        return poolSize++;
+    }
+
+    /**
+     * Adds a class constant to the pool.
+     * @param name The internal name of the class.
+     * @return The index of the constant.
+     */
+    int classRef(String name) {
+        return constant("C" + name, CONSTANT_CLASS, utf8(name), -1);
+    }
+
+    /**
+     * Adds a method reference constant to the pool.
+     * @param owner The internal name of the class that owns the method.
+     * @param name The name of the method.
+     * @param desc The descriptor of the method.
+     * @return The index of the constant.
+     */
+    int methodRef(String owner, String name, String desc) {
+        int nameAndType = constant("N" + name + desc, CONSTANT_NAME_AND_TYPE, utf8(name), utf8(desc));
+        return constant("M" + owner + "." + name + desc, CONSTANT_METHODREF, classRef(owner), nameAndType);
+    }
+
+    /**
+     * Adds an integer constant to the pool.
+     * @param value The value of the integer.
+     * @return The index of the constant.
+     */
+    int integer(int value) {
+        return constant("I" + value, CONSTANT_INTEGER, value, -1);
+    }
+
+    /**
+     * Writes a byte of code.
+     * @param value The byte.
+     */
+    private void put(int value) {
+        if(length == code.length) {
+            byte[] newCode = new byte[code.length * 2];
+            System.arraycopy(code, 0, newCode, 0, length);
+            code = newCode;
+        }
+        code[length++] = (byte) value;
+    }
+
+    /**
+     * Writes an instruction without operands.
+     * @param opcode The opcode.
+     */
+    void op(int opcode) {
+        put(opcode);
+    }
+
+    /**
+     * Writes an instruction with a one byte operand.
+     * @param opcode The opcode.
+     * @param operand The operand.
+     */
+    void op1(int opcode, int operand) {
+        put(opcode);
+        put(operand);
+    }
+
+    /**
+     * Writes an instruction with a two byte operand.
+     * @param opcode The opcode.
+     * @param operand The operand.
+     */
+    void op2(int opcode, int operand) {
+        put(opcode);
+        put(operand >>> 8);
+        put(operand);
+    }
+
+    /**
+     * Writes the shortest instruction that pushes an integer.
+     * @param value The integer.
+     */
+    void push(int value) {
+        if(value >= -1 && value <= 5)
+            op(ICONST_0 + value);
+        else if(value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE)
+            op1(BIPUSH, value);
+        else if(value >= Short.MIN_VALUE && value <= Short.MAX_VALUE)
+            op2(SIPUSH, value);
+        else {
+            int index = integer(value);
+            if(index < 0x100)
+                op1(LDC, index);
+            else
+                op2(LDC_W, index);
+        }
+    }
+
+    /**
+     * Writes a branch instruction whose target is bound later.
+     * @param opcode The opcode of the branch.
+     * @return The position of the branch to bind.
+     */
+    int jump(int opcode) {
+        int position = length;
+        op2(opcode, 0);
+        return position;
+    }
+
+    /**
+     * Binds a branch to the current position in the code.
+     * @param position The position returned by {@link #jump(int)}.
+     */
+    void bind(int position) {
+        int offset = length - position;
+        code[position + 1] = (byte) (offset >>> 8);
+        code[position + 2] = (byte) offset;
+    }
+
+    /**
+     * Ends the code currently being written as a method.
+     * @param access The access flags of the method.
+     * @param name The name of the method.
+     * @param desc The descriptor of the method.
+     * @param maxStack The maximum depth of the operand stack.
+     * @param maxLocals The amount of local variables.
+     */
+    void method(int access, String name, String desc, int maxStack, int maxLocals) {
+        try {
+            DataOutputStream os = new DataOutputStream(methods);
+            os.writeShort(access);
+            os.writeShort(utf8(name));
+            os.writeShort(utf8(desc));
+            os.writeShort(1);
+            os.writeShort(utf8("Code"));
+            os.writeInt(12 + length);
+            os.writeShort(maxStack);
+            os.writeShort(maxLocals);
+            os.writeInt(length);
+            os.write(code, 0, length);
+            os.writeShort(0);
+            os.writeShort(0);
+        } catch(IOException ex) {
+            throw new RuntimeException(ex);
+        }
+        amountMethods++;
+        length = 0;
+    }
+
+    /**
+     * Gets the bytes of the class file.
+     * @return The class file.
+     */
+    byte[] toByteArray() {
+        int thisClass = classRef(name);
+        int superClass = classRef(superName);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            DataOutputStream os = new DataOutputStream(bytes);
+            os.writeInt(0xCAFEBABE);
+            os.writeShort(0);
+            os.writeShort(MAJOR_VERSION);
+            os.writeShort(poolSize);
+            pool.writeTo(os);
+            os.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            os.writeShort(thisClass);
+            os.writeShort(superClass);
+            os.writeShort(0);
+            os.writeShort(0);
+            os.writeShort(amountMethods);
+            methods.writeTo(os);
+            os.writeShort(0);
+        } catch(IOException ex) {
+            throw new RuntimeException(ex);
+        }
+        return bytes.toByteArray();
+    }
+}
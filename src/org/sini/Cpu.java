@@ -1,7 +1,14 @@
 package org.sini;
 
+import java.io.File;
 import java.io.InputStream;
 import java.io.IOException;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
 import static org.sini.Ops.*;
 
 /**
@@ -13,7 +20,7 @@ public final class Cpu {
     /**
      * As of DCPU-16 Version 1.1 the amount of memory is 128 kilobytes. 
      */
-    private static final int AMOUNT_MEMORY = 0x10000;
+    static final int AMOUNT_MEMORY = 0x10000;
     
     /**
      * The starting index in the memory array of video ram.
@@ -41,36 +48,357 @@ public final class Cpu {
     public static final int O = 10;
     
     /**
-     * The cycle index in the registers array.
+     * The reason returned when the cycle budget of a run has been used up.
      */
-    public static final int C = 11;
+    public static final int STOP_BUDGET = 0;
     
     /**
-     * The local memory of this {@link Cpu}.
+     * The reason returned when the program has halted.
      */
-    Cell[] m;
+    public static final int STOP_HALT = 1;
+    
+    /**
+     * The reason returned when a run was paused by {@link #pause()}.
+     */
+    public static final int STOP_PAUSE = 2;
+    
+    /**
+     * The reason returned when the program has reached an armed breakpoint, before
+     * the instruction at the breakpoint is executed.
+     */
+    public static final int STOP_BREAK = 3;
+    
+    /**
+     * The reason returned when an instruction has accessed a watched word of memory,
+     * after the instruction is executed.
+     */
+    public static final int STOP_WATCH = 4;
+    
+    /**
+     * The reason returned when the program spins in a loop that will not leave until
+     * a {@link Device} changes memory, the cycles up to the budget are charged as if
+     * the loop had run.
+     */
+    public static final int STOP_IDLE = 5;
+    
+    /**
+     * The access of a watchpoint that stops on reads.
+     */
+    public static final int WATCH_READ = 0x1;
+    
+    /**
+     * The access of a watchpoint that stops on writes.
+     */
+    public static final int WATCH_WRITE = 0x2;
+    
+    /**
+     * The flag marking an operand location as a register index.
+     */
+    private static final int REGISTER = 0x10000;
+    
+    /**
+     * The amount of words in a page of memory, as a power of two.
+     */
+    static final int PAGE_SHIFT = 8;
+    
+    /**
+     * The mask of the offset of a word within its page.
+     */
+    static final int PAGE_MASK = (1 << PAGE_SHIFT) - 1;
+    
+    /**
+     * The amount of pages in the memory.
+     */
+    private static final int AMOUNT_PAGES = AMOUNT_MEMORY >>> PAGE_SHIFT;
+    
+    /**
+     * The page flag set when a page holds words of a decoded instruction.
+     */
+    private static final int PAGE_CODE = 0x1;
+    
+    /**
+     * The page flag set when a page may be shared and has to be copied before it is written.
+     */
+    private static final int PAGE_SHARED = 0x2;
+    
+    /**
+     * The page flag set on the pages of video memory, whose writes are tracked.
+     */
+    private static final int PAGE_VIDEO = 0x4;
+    
+    /**
+     * The page flag set on the pages that hold a word of a watchpoint.
+     */
+    private static final int PAGE_WATCH = 0x8;
+    
+    /**
+     * The page flag set on the pages that a {@link Device} is attached to.
+     */
+    private static final int PAGE_DEVICE = 0x10;
+    
+    /**
+     * The amount of cycles between the checks for a spinning loop.
+     */
+    private static final long SPIN_INTERVAL = 1L << 16;
+    
+    /**
+     * The maximum amount of words of a loop that is checked for spinning.
+     */
+    private static final int MAX_SPIN_WORDS = 32;
+    
+    /**
+     * The request bit set by {@link #pause()}.
+     */
+    private static final int REQUEST_PAUSE = 0x1;
+    
+    /**
+     * The request bit set by {@link #service()}.
+     */
+    private static final int REQUEST_SERVICE = 0x2;
+    
+    /**
+     * The request bit set by {@link #requestFrame()}.
+     */
+    private static final int REQUEST_FRAME = 0x4;
+    
+    /**
+     * The updater of the requests, so that a request from one thread does not
+     * overwrite a request from another.
+     */
+    private static final AtomicIntegerFieldUpdater<Cpu> REQUESTS = AtomicIntegerFieldUpdater.newUpdater(Cpu.class, "requests");
+    
+    /**
+     * The bit of a decoded instruction that marks an armed breakpoint at its address,
+     * which makes the entry negative.
+     */
+    private static final long BREAKPOINT = 1L << 63;
+    
+    /**
+     * The amount of words of video memory.
+     */
+    static final int AMOUNT_VIDEO_WORDS = 0x200;
+    
+    /**
+     * The amount of times a basic block is entered before it is compiled.
+     */
+    private static final int HOT_THRESHOLD = 1000;
+    
+    /**
+     * The amount of cycles charged for each basic instruction, next words excluded.
+     */
+    static final int[] CYCLES = { 0, 1, 2, 2, 2, 3, 3, 2, 2, 1, 1, 1, 2, 2, 2, 2 };
+    
+    /**
+     * The page of memory that every page of a newly initialized {@link Cpu} shares.
+     */
+    private static final char[] ZERO_PAGE = new char[1 << PAGE_SHIFT];
+    
+    /**
+     * The local memory of this {@link Cpu}, split into pages. A page flagged with
+     * {@link #PAGE_SHARED} may be shared with other {@link Cpu}s and snapshots, and is
+     * copied before it is first written.
+     */
+    char[][] m;
     
     /**
      * The registers for the {@link Cpu}.
      */
-    Cell[] r;
+    char[] r;
+    
+    /**
+     * The decoded instructions for each page of memory, pages are allocated when
+     * an instruction in them is first executed. An entry holds the opcode in bits 0-15,
+     * the next word of value a in bits 16-31, the next word of value b in bits 32-47,
+     * the length of the instruction in bits 48-49, its cycles in bits 50-53 and the amount
+     * of words stepped over when it is skipped in bits 54-55. Bit 63 is set when a
+     * breakpoint is armed at its address. An entry of zero has not been decoded.
+     */
+    private long[][] decoded;
+    
+    /**
+     * The flags for each page of memory.
+     */
+    private byte[] pageFlags;
+    
+    /**
+     * The compiled basic blocks for each page of memory, indexed by the address of
+     * their first instruction.
+     */
+    private Block[][] blocks;
+    
+    /**
+     * The amount of times each basic block has been entered for each page of memory.
+     */
+    private int[][] heat;
+    
+    /**
+     * The published copies of video memory, so that video memory is only read from
+     * other threads through a consistent frame.
+     */
+    final Frames frames = new Frames();
+    
+    /**
+     * Video memory has been written since the last frame was published.
+     */
+    private boolean videoChanged;
+    
+    /**
+     * The addresses that have an armed breakpoint, a bit for each address, or null
+     * if no breakpoint has been armed.
+     */
+    private long[] breakpoints;
+    
+    /**
+     * The amount of armed breakpoints.
+     */
+    private int amountBreakpoints;
+    
+    /**
+     * The conditions of the conditional breakpoints keyed by their addresses, the
+     * index of the register in the upper half and its value in the lower half.
+     */
+    private final Map<Integer, Integer> breakConditions = new HashMap<Integer, Integer>();
+    
+    /**
+     * The address of the breakpoint that the last run stopped at, which is passed
+     * over when the next run resumes from it, or -1.
+     */
+    private int resumeAt = -1;
+    
+    /**
+     * The watched ranges of memory, the first address, the last address and the
+     * access of each.
+     */
+    private int[] watchpoints = new int[12];
+    
+    /**
+     * The amount of watchpoints.
+     */
+    private int amountWatchpoints;
+    
+    /**
+     * The amount of watchpoints that stop on reads.
+     */
+    private int amountReadWatchpoints;
+    
+    /**
+     * The address of the watched word accessed in the current run, or -1.
+     */
+    private int watchAddress = -1;
+    
+    /**
+     * The amount of cycles that have been executed.
+     */
+    private long cycles;
+    
+    /**
+     * The program has executed a halt instruction.
+     */
+    private boolean halted;
+    
+    /**
+     * The requests of other threads, {@link #REQUEST_PAUSE} and {@link #REQUEST_SERVICE},
+     * checked whenever the program branches so that a single read covers both.
+     */
+    private volatile int requests;
+    
+    /**
+     * The {@link Device} attached to each page, or null for the pages of ordinary memory.
+     */
+    private final Device[] pageDevices = new Device[AMOUNT_PAGES];
+    
+    /**
+     * The attached devices, each once.
+     */
+    private Device[] devices = new Device[0];
+    
+    /**
+     * The thread that waits for a request while the program is idle, or null.
+     */
+    private volatile Thread waiter;
+    
+    /**
+     * The {@link Machine} that runs the cpu, which is woken by requests while its
+     * program is idle, or null.
+     */
+    volatile Machine machine;
     
     /**
-     * The {@link Cpu} will print out debugging information.
+     * The first address of the loop that is checked for spinning, or -1.
      */
-    boolean debug;
+    private int spinStart = -1;
+    
+    /**
+     * The address of the last instruction of the loop that is checked for spinning,
+     * which jumps back to its first address.
+     */
+    private int spinEnd;
+    
+    /**
+     * The registers have been copied at the first address of the loop.
+     */
+    private boolean spinArmed;
+    
+    /**
+     * The registers copied at the first address of the loop.
+     */
+    private final char[] spinRegisters = new char[AMOUNT_REGISTERS + 3];
+    
+    /**
+     * The amount of cycles at which the next leader is checked for spinning, 0 while
+     * a loop is checked, so that a leader only compares the cycles.
+     */
+    private long spinSample;
+    
+    /**
+     * The amount of cycles at which the next check for a spinning loop starts.
+     */
+    private long spinResume;
+    
+    /**
+     * The {@link Cpu} will compile hot basic blocks with the {@link Jit}.
+     */
+    boolean jit = true;
+    
+    /**
+     * The {@link Tracer} that records every executed instruction, or null if the
+     * {@link Cpu} is not traced. It has to be set before the program is mounted, so
+     * that the compiled blocks record their instructions too.
+     */
+    Tracer tracer;
+    
+    /**
+     * The {@link Profiler} that counts every executed instruction, or null if the
+     * {@link Cpu} is not profiled. A profiled {@link Cpu} does not compile blocks, so
+     * that every instruction is counted.
+     */
+    Profiler profiler;
     
     /**
      * Initializes this {@link Cpu}.
      */
     public void initialize() {
-        m = new Cell[AMOUNT_MEMORY];
-        for(int i = 0; i < m.length; i++)
-            m[i] = new Cell(i);
-        r = new Cell[AMOUNT_REGISTERS + 4];   
-        for(int i = 0; i < r.length; i++)
-            r[i] = new Cell(i);
-        r[SP].v = 0xFFFF;
+        m = new char[AMOUNT_PAGES][];
+        r = new char[AMOUNT_REGISTERS + 3];
+        r[SP] = 0xFFFF;
+        decoded = new long[AMOUNT_PAGES][];
+        pageFlags = new byte[AMOUNT_PAGES];
+        for(int i = 0; i < AMOUNT_PAGES; i++) {
+            m[i] = ZERO_PAGE;
+            pageFlags[i] = PAGE_SHARED;
+        }
+        for(int i = 0; i < AMOUNT_VIDEO_WORDS >>> PAGE_SHIFT; i++)
+            pageFlags[(VIDEO_RAM >>> PAGE_SHIFT) + i] |= PAGE_VIDEO;
+        flagWatchpoints();
+        flagDevices();
+        videoChanged = true;
+        spinStart = -1;
+        spinSample = 0;
+        spinResume = 0;
+        blocks = new Block[AMOUNT_PAGES][];
+        heat = new int[AMOUNT_PAGES][];
+        cycles = 0;
+        halted = false;
     }
     
     /**
@@ -92,230 +420,831 @@ public final class Cpu {
     }
     
     /**
-     * Executes the currently mounted program.
+     * Executes the currently mounted program from the start until it halts.
      */
     public void execute() {
-        r[PC].v = 0;
+        r[PC] = 0;
+        halted = false;
+        int reason;
+        while((reason = run(Long.MAX_VALUE)) != STOP_HALT)
+            if(reason == STOP_IDLE)
+                await(Long.MAX_VALUE);
+    }
+    
+    /**
+     * Executes the currently mounted program from address 0 at the pace of a
+     * {@link Pacer}, running a burst of cycles and then parking the thread until the
+     * wall clock has caught up. A request wakes the thread early, so that keys reach
+     * the program without waiting for the burst.
+     * @param pacer The {@link Pacer} to run at.
+     */
+    public void execute(Pacer pacer) {
+        r[PC] = 0;
+        halted = false;
+        pacer.getDelay(cycles);
+        while(run(pacer.getBurst()) != STOP_HALT) {
+            long delay = pacer.getDelay(cycles);
+            if(delay > 0)
+                await(delay);
+        }
+    }
+    
+    /**
+     * Parks the thread until another thread makes a request.
+     * @param nanos The maximum nanoseconds to park for, or {@link Long#MAX_VALUE} to
+     *              park until a request.
+     */
+    private void await(long nanos) {
+        waiter = Thread.currentThread();
+        if(nanos == Long.MAX_VALUE) {
+            while(requests == 0)
+                LockSupport.park(this);
+        } else if(requests == 0)
+            LockSupport.parkNanos(this, nanos);
+        waiter = null;
+    }
+    
+    /**
+     * Runs the currently mounted program from its current state. The budget is
+     * checked between instructions and compiled blocks, so a run can take a few
+     * cycles more than its budget.
+     * @param maxCycles The maximum amount of cycles to run for.
+     * @return The reason the run returned, {@link #STOP_BUDGET}, {@link #STOP_HALT},
+     *         {@link #STOP_PAUSE}, {@link #STOP_BREAK}, {@link #STOP_WATCH} or
+     *         {@link #STOP_IDLE}.
+     */
+    public int run(long maxCycles) {
+        long limit = maxCycles > Long.MAX_VALUE - cycles ? Long.MAX_VALUE : cycles + maxCycles;
+        return run(limit, false);
+    }
+    
+    /**
+     * Executes the single instruction at the program counter. A pending pause is taken
+     * instead of the instruction, and a step is never fast-forwarded as idle.
+     * @return The reason the step returned, {@link #STOP_HALT} if the program has
+     *         halted, {@link #STOP_PAUSE} if a pause was taken, {@link #STOP_BREAK} or
+     *         {@link #STOP_WATCH} if it stopped at a breakpoint or watchpoint, otherwise
+     *         {@link #STOP_BUDGET}.
+     */
+    public int step() {
+        return run(Long.MAX_VALUE, true);
+    }
+    
+    /**
+     * Requests that the current run returns with {@link #STOP_PAUSE}, the request is
+     * checked whenever the program branches. This may be called from any thread.
+     */
+    public void pause() {
+        request(REQUEST_PAUSE);
+    }
+    
+    /**
+     * Requests that the attached devices are serviced with {@link Device#service(Cpu)},
+     * the request is checked whenever the program branches. This may be called from
+     * any thread.
+     */
+    public void service() {
+        request(REQUEST_SERVICE);
+    }
+    
+    /**
+     * Sets a request bit, keeping the bits set by other threads.
+     * @param request The request bit.
+     */
+    private void request(int request) {
+        int current;
+        do {
+            current = requests;
+        } while(!REQUESTS.compareAndSet(this, current, current | request));
+        Thread waiter = this.waiter;
+        if(waiter != null)
+            LockSupport.unpark(waiter);
+        Machine machine = this.machine;
+        if(machine != null)
+            machine.wake();
+    }
+    
+    /**
+     * Gets if another thread has made a request that the program has not taken.
+     * @return If a request is pending.
+     */
+    boolean hasRequests() {
+        return requests != 0;
+    }
+    
+    /**
+     * Charges cycles to an idle program without running it, as if it had spun for them.
+     * @param amount The amount of cycles to charge.
+     */
+    void charge(long amount) {
+        cycles += amount;
+    }
+    
+    /**
+     * Gets the amount of cycles that have been executed.
+     * @return The amount of cycles.
+     */
+    public long getCycles() {
+        return cycles;
+    }
+    
+    /**
+     * Gets if the program has halted.
+     * @return If the program has halted.
+     */
+    public boolean isHalted() {
+        return halted;
+    }
+    
+    /**
+     * Runs the currently mounted program from its current state.
+     * @param limit The amount of cycles to stop at.
+     * @param single Only execute a single instruction.
+     * @return The reason the run returned.
+     */
+    private int run(long limit, boolean single) {
+        if(halted)
+            return STOP_HALT;
+        if(r[PC] != resumeAt)
+            resumeAt = -1;
+        watchAddress = -1;
+        long cycles = this.cycles;
+        long[] page = null;
+        int pageBase = -1;
+        boolean leader = true;
+        Profiler profiler = this.profiler;
+        Tracer tracer = this.tracer;
+        boolean watching = amountWatchpoints != 0;
+        boolean compile = jit && !single && profiler == null && amountReadWatchpoints == 0;
+        /* Profiled and traced programs are not fast-forwarded, so that every cycle is recorded, nor
+           are programs with breakpoints or watchpoints, which a fast-forward would pass over. */
+        boolean idling = !single && profiler == null && tracer == null && amountBreakpoints == 0 && !watching;
+        long spinSample = idling ? this.spinSample : Long.MAX_VALUE;
         while(true) {
-            int op = m[r[PC].v++].v;
+            if(cycles >= limit) {
+                this.cycles = cycles;
+                return STOP_BUDGET;
+            }
+            int pc = r[PC];
+            if(leader) {
+                if(requests != 0) {
+                    int taken = REQUESTS.getAndSet(this, 0);
+                    if((taken & REQUEST_SERVICE) != 0) {
+                        serviceDevices();
+                        stopSpin();
+                        if(idling)
+                            spinSample = this.spinSample;
+                    }
+                    if((taken & REQUEST_FRAME) != 0)
+                        publishFrame();
+                    if((taken & REQUEST_PAUSE) != 0) {
+                        this.cycles = cycles;
+                        return STOP_PAUSE;
+                    }
+                }
+                if(cycles >= spinSample) {
+                    boolean idle = spins(pc, cycles);
+                    spinSample = this.spinSample;
+                    if(idle) {
+                        if(limit != Long.MAX_VALUE && cycles < limit)
+                            cycles = limit;
+                        this.spinSample = spinResume = cycles;
+                        this.cycles = cycles;
+                        return STOP_IDLE;
+                    }
+                }
+                if(compile) {
+                    Block block = getBlock(pc);
+                    if(block == null)
+                        block = heat(pc);
+                    if(block != null) {
+                        /* A block ends at every leader, so a loop that is checked for spinning is run a block at a time. */
+                        long chainLimit = limit;
+                        if(spinSample < limit)
+                            chainLimit = spinSample < cycles ? cycles : spinSample;
+                        cycles = chain(block, cycles, chainLimit);
+                        if(watchAddress >= 0) {
+                            this.cycles = cycles;
+                            return STOP_WATCH;
+                        }
+                        continue;
+                    }
+                }
+            }
+            if((pc & ~PAGE_MASK) != pageBase) {
+                pageBase = pc & ~PAGE_MASK;
+                page = decoded[pc >>> PAGE_SHIFT];
+                if(page == null)
+                    page = decoded[pc >>> PAGE_SHIFT] = new long[1 << PAGE_SHIFT];
+            }
+            long insn = page[pc & PAGE_MASK];
+            if(insn == 0)
+                insn = decode(pc);
+            if(insn < 0 && stops(pc)) {
+                this.cycles = cycles;
+                return STOP_BREAK;
+            }
+            if(watching)
+                watchReads(insn);
+            int op = (int) insn & 0xFFFF;
+            int next = pc + (int) (insn >>> 48 & 0x3) & 0xFFFF;
+            r[PC] = (char) next;
+            cycles += (int) (insn >>> 50 & 0xF);
+            int aValue;
+            int bValue = 0;
             if((op & 0xF) != 0) {
-                Object a = getValue(op >>> 4 & 0x3F, true);                                
-                Object b = getValue(op >>> 10 & 0x3F, true);
-                if(!(a instanceof Cell)) {
-                    Object temp = a;
-                    a = b;
-                    b = temp;
-                }   
-                boolean bothLiteral = !(a instanceof Cell) && !(b instanceof Cell);
-                int aValue = a instanceof Cell ? ((Cell) a).v : (Integer) a;
-                int bValue = b instanceof Cell ? ((Cell) b).v : (Integer) b;
+                int a = op >>> 4 & 0x3F;
+                int b = op >>> 10;
+                boolean bothLiteral = false;
+                if(a < 0x20) {
+                    a = getLocation(a, pc + 1, (int) (insn >>> 16) & 0xFFFF);
+                    bValue = getValue(b, (int) (insn >>> 32) & 0xFFFF);
+                    aValue = a < REGISTER ? read(a) : r[a - REGISTER];
+                } else if(b < 0x20) {
+                    /* A literal a is swapped with b so that b becomes the destination. */
+                    bValue = a - 0x20;
+                    a = getLocation(b, pc + 1, (int) (insn >>> 32) & 0xFFFF);
+                    aValue = a < REGISTER ? read(a) : r[a - REGISTER];
+                } else {
+                    bothLiteral = true;
+                    aValue = b - 0x20;
+                    bValue = a - 0x20;
+                }
                 switch(op & 0xF) {
 
                     case OP_SET:  
                         if(!bothLiteral)
-                            ((Cell) a).v = bValue;
-                        r[C].v++;
+                            write(a, bValue);
                         break;
 
                     case OP_ADD:  
                         if(!bothLiteral) {
-                            int value = ((Cell) a).v + bValue;
+                            int value = aValue + bValue;
                             if(value > 0xFFFF) {
-                                r[O].v = 0x0001;
+                                r[O] = 0x0001;
                                 value &= 0xFFFF;
                             }
-                            ((Cell) a).v = value;
+                            write(a, value);
                         }
-                        r[C].v += 2;
                         break;
 
                     case OP_SUB:
                         if(!bothLiteral) {
-                            int value = ((Cell) a).v - bValue;
+                            int value = aValue - bValue;
                             if(value < 0) {
-                                r[O].v = 0xFFFF;
+                                r[O] = 0xFFFF;
                                 value &= 0xFFFF;
                             }
-                            ((Cell) a).v = value;
+                            write(a, value);
                         }
-                        r[C].v += 2;
                         break;
 
                     case OP_MUL:
                         if(!bothLiteral) {
-                            int value = ((Cell) a).v * bValue;
-                            ((Cell) a).v = value & 0xFFFF;
-                            r[O].v = value >>> 16;
+                            int value = aValue * bValue;
+                            write(a, value & 0xFFFF);
+                            r[O] = (char) (value >>> 16);
                         }
-                        r[C].v += 2;
                         break;
 
                     case OP_DIV:
                         if(!bothLiteral) {
                             if(bValue == 0) {
-                                ((Cell) a).v = 0;
-                                r[O].v = 0;
+                                write(a, 0);
+                                r[O] = 0;
                             } else {
-                                ((Cell) a).v = ((Cell) a).v/bValue & 0xFFFF;
-                                r[O].v = (((Cell) a).v << 16)/bValue & 0xFFFF;
+                                int value = aValue/bValue & 0xFFFF;
+                                write(a, value);
+                                r[O] = (char) ((value << 16)/bValue & 0xFFFF);
                             }
                         }
-                        r[C].v += 3;
                         break;
 
                     case OP_MOD:
                         if(!bothLiteral) {
                             if(bValue == 0) {
-                                ((Cell) a).v = 0;
+                                write(a, 0);
                             } else
-                                ((Cell) a).v = ((Cell) a).v % bValue;
+                                write(a, aValue % bValue);
                         }
-                        r[C].v += 3;
                         break;
 
                     case OP_SHL:
                         if(!bothLiteral) {
-                            int value = ((Cell) a).v << bValue;
-                            r[O].v = value >>> 16;
-                            ((Cell) a).v = value & 0xFFFF;
+                            int value = aValue << bValue;
+                            r[O] = (char) (value >>> 16);
+                            write(a, value & 0xFFFF);
                         }
-                        r[C].v += 2;
                         break;
 
                     case OP_SHR:
                         if(!bothLiteral) {
-                            ((Cell) a).v = ((Cell) a).v >>> bValue;
-                            r[O].v = ((Cell) a).v << 16 >>> bValue & 0xFFFF;
+                            int value = aValue >>> bValue;
+                            write(a, value);
+                            r[O] = (char) (value << 16 >>> bValue & 0xFFFF);
                         }
-                        r[C].v += 2;
                         break;
 
                     case OP_AND:
                         if(!bothLiteral)
-                            ((Cell) a).v &= bValue;
-                        r[C].v++;
+                            write(a, aValue & bValue);
                         break;
 
                     case OP_BOR:
                         if(!bothLiteral)
-                            ((Cell) a).v |= bValue;
-                        r[C].v++;
+                            write(a, aValue | bValue);
                         break;
 
                     case OP_XOR:
                         if(!bothLiteral)
-                            ((Cell) a).v ^= bValue;
-                        r[C].v++;
+                            write(a, aValue ^ bValue);
                         break;
 
                     case OP_IFE:
-                        if(aValue != bValue) {
-                            op = m[r[PC].v++].v;
-                            getValue(op >>> 4 & 0x3F, false);
-                            getValue(op >>> 10 & 0x3F, false);
-                            r[C].v++;
-                        }
-                        r[C].v += 2;
+                        if(aValue != bValue)
+                            cycles += skip();
                         break;
 
                     case OP_IFN:
-                        if(aValue == bValue) {
-                            op = m[r[PC].v++].v;
-                            getValue(op >>> 4 & 0x3F, false);
-                            getValue(op >>> 10 & 0x3F, false);
-                            r[C].v++;
-                        }
-                        r[C].v += 2;
+                        if(aValue == bValue)
+                            cycles += skip();
                         break;
 
                     case OP_IFG:
-                        if(aValue <= bValue) {
-                            op = m[r[PC].v++].v;
-                            getValue(op >>> 4 & 0x3F, false);
-                            getValue(op >>> 10 & 0x3F, false);
-                            r[C].v++;
-                        }
-                        r[C].v += 2;
+                        if(aValue <= bValue)
+                            cycles += skip();
                         break;
 
                      case OP_IFB:
-                        if((aValue & bValue) == 0) {
-                            op = m[r[PC].v++].v;
-                            getValue(op >>> 4 & 0x3F, false);
-                            getValue(op >>> 10 & 0x3F, false);
-                            r[C].v++;
-                        }
-                        r[C].v += 2;
+                        if((aValue & bValue) == 0)
+                            cycles += skip();
                         break;
                 }
             } else {
                 op >>>= 4;
-                Object a = getValue(op >>> 6, true);
-                int aValue = a instanceof Cell ? ((Cell) a).v : (Integer) a;
+                aValue = getValue(op >>> 6, (int) (insn >>> 32) & 0xFFFF);
                 switch(op & 0x3F) {
 
                     case 0:
-                        return;
+                        if(profiler != null)
+                            profiler.count(pc, insn, next, next);
+                        if(tracer != null)
+                            tracer.record(pc, (int) insn & 0xFFFF, aValue, 0, r[O], (int) (insn >>> 50 & 0xF));
+                        halted = true;
+                        publishFrame();
+                        this.cycles = cycles;
+                        return STOP_HALT;
                         
                     case OP_JSR:
-                        Cell cell = m[--r[SP].v];
-                        cell.v = r[PC].v;
-                        r[PC].v = aValue;
-                        r[C].v += 2;
+                        write(--r[SP], r[PC]);
+                        r[PC] = (char) aValue;
                         break;
                 }
             }
+            if(profiler != null)
+                profiler.count(pc, insn, next, r[PC]);
+            if(tracer != null)
+                trace(tracer, pc, insn, next, aValue, bValue);
+            if(watching && watchAddress >= 0) {
+                this.cycles = cycles;
+                return STOP_WATCH;
+            }
+            if(single) {
+                this.cycles = cycles;
+                return STOP_BUDGET;
+            }
+            leader = r[PC] != next || ((int) insn & 0xC) == 0xC;
+        }
+    }
+    
+    /**
+     * Checks for a loop that spins, which is decided over two arrivals at the first
+     * address of the loop. A loop whose instructions do not write memory and that
+     * arrives at its first address again with the same registers, without leaving the
+     * loop in between, will not leave until a {@link Device} changes memory.
+     * @param pc The address of the leader.
+     * @param cycles The amount of cycles executed.
+     * @return If the loop spins.
+     */
+    private boolean spins(int pc, long cycles) {
+        if(spinStart < 0) {
+            spinResume = cycles + SPIN_INTERVAL;
+            spinStart = findSpin(pc);
+            spinArmed = false;
+            if(spinStart < 0) {
+                spinSample = spinResume;
+                return false;
+            }
+            spinSample = 0;
+        }
+        if(pc < spinStart || pc > spinEnd) {
+            stopSpin();
+            return false;
+        }
+        if(pc != spinStart)
+            return false;
+        if(spinArmed) {
+            /* A loop that changed a register is left to the compiled blocks. */
+            boolean idle = Arrays.equals(r, spinRegisters);
+            stopSpin();
+            return idle;
+        }
+        System.arraycopy(r, 0, spinRegisters, 0, r.length);
+        spinArmed = true;
+        return false;
+    }
+    
+    /**
+     * Stops checking a loop for spinning until the next check is due.
+     */
+    private void stopSpin() {
+        spinStart = -1;
+        spinSample = spinResume;
+    }
+    
+    /**
+     * Finds the loop that an address is in, the instructions from the address up to
+     * the first SET PC to a literal address that is not after it, which is the first
+     * address of the loop. The instructions of the loop may not write memory or call.
+     * @param pc The address.
+     * @return The first address of the loop with {@link #spinEnd} set to the address
+     *         of its last instruction, or -1 if there is no such loop.
+     */
+    private int findSpin(int pc) {
+        int end = pc;
+        while(end - pc < MAX_SPIN_WORDS) {
+            long insn = fetch(end);
+            int op = (int) insn & 0xFFFF;
+            int b = op >>> 10;
+            if((op & 0xF) == OP_SET && (op >>> 4 & 0x3F) == 0x1C && (b >= 0x20 || b == 0x1F)) {
+                int start = b == 0x1F ? (int) (insn >>> 32) & 0xFFFF : b - 0x20;
+                if(start <= pc && end - start < MAX_SPIN_WORDS) {
+                    for(int address = start; address != end; address += (int) (fetch(address) >>> 48 & 0x3)) {
+                        if(address > end || writesMemory(fetch(address)))
+                            return -1;
+                    }
+                    spinEnd = end;
+                    return start;
+                }
+            }
+            end += (int) (insn >>> 48 & 0x3);
+            if(end > 0xFFFF || writesMemory(insn))
+                return -1;
+        }
+        return -1;
+    }
+    
+    /**
+     * Gets if an instruction may write memory, which is a call or an instruction
+     * that is not a condition and has a destination in memory.
+     * @param insn The decoded instruction.
+     * @return If the instruction may write memory.
+     */
+    private static boolean writesMemory(long insn) {
+        int op = (int) insn & 0xFFFF;
+        if((op & 0xF) == 0)
+            return true;
+        if((op & 0xF) >= OP_IFE)
+            return false;
+        int a = op >>> 4 & 0x3F;
+        /* A literal a is swapped with b so that b becomes the destination. */
+        int destination = a >= 0x20 ? op >>> 10 : a;
+        return destination >= 0x08 && destination < 0x1B || destination == 0x1E;
+    }
+    
+    /**
+     * Records an executed instruction with a {@link Tracer}. The value of a is not
+     * recorded for SET, which does not read it in a compiled block.
+     * @param tracer The {@link Tracer}.
+     * @param pc The address of the instruction.
+     * @param insn The decoded instruction.
+     * @param next The address after the instruction.
+     * @param aValue The value of a.
+     * @param bValue The value of b.
+     */
+    private void trace(Tracer tracer, int pc, long insn, int next, int aValue, int bValue) {
+        int op = (int) insn & 0xFFFF;
+        int cycles = (int) (insn >>> 50 & 0xF);
+        if((op & 0xF) >= OP_IFE)
+            cycles += r[PC] - next & 0xFFFF;
+        tracer.record(pc, op, (op & 0xF) == OP_SET ? 0 : aValue, bValue, r[O], cycles);
+    }
+    
+    /**
+     * Executes compiled basic blocks for as long as the next one has been compiled,
+     * keeping the dispatch between blocks in a loop of its own.
+     * @param block The first block to execute.
+     * @param cycles The amount of cycles executed so far.
+     * @param limit The amount of cycles to stop at.
+     * @return The amount of cycles executed.
+     */
+    private long chain(Block block, long cycles, long limit) {
+        do {
+            cycles += block.execute(this, m, r);
+            if(cycles >= limit || requests != 0 || watchAddress >= 0)
+                break;
+            block = getBlock(r[PC]);
+        } while(block != null);
+        return cycles;
+    }
+    
+    /**
+     * Gets the compiled basic block that starts at an address.
+     * @param pc The address of the first instruction of the block.
+     * @return The compiled block, or null if it has not been compiled.
+     */
+    private Block getBlock(int pc) {
+        Block[] pageBlocks = blocks[pc >>> PAGE_SHIFT];
+        return pageBlocks == null ? null : pageBlocks[pc & PAGE_MASK];
+    }
+    
+    /**
+     * Counts an entry into a basic block that has not been compiled, compiling
+     * it once it has been entered enough times.
+     * @param pc The address of the first instruction of the block.
+     * @return The compiled block, or null if it has not been compiled.
+     */
+    private Block heat(int pc) {
+        int page = pc >>> PAGE_SHIFT;
+        if(blocks[page] == null) {
+            blocks[page] = new Block[1 << PAGE_SHIFT];
+            heat[page] = new int[1 << PAGE_SHIFT];
         }
+        if(++heat[page][pc & PAGE_MASK] != HOT_THRESHOLD)
+            return null;
+        return blocks[page][pc & PAGE_MASK] = Jit.compile(this, pc);
     }
     
     /**
-     * Gets the v from a v opcode.
+     * Fetches the decoded instruction at an address, decoding it if it is not cached.
+     * @param pc The address of the instruction.
+     * @return The decoded instruction.
+     */
+    long fetch(int pc) {
+        long[] page = decoded[pc >>> PAGE_SHIFT];
+        long insn;
+        if(page == null || (insn = page[pc & PAGE_MASK]) == 0)
+            insn = decode(pc);
+        return insn;
+    }
+    
+    /**
+     * Decodes the instruction at an address and caches it.
+     * @param pc The address of the instruction.
+     * @return The decoded instruction.
+     */
+    private long decode(int pc) {
+        int op = read(pc);
+        int length = 1;
+        long insn = op;
+        int cycles;
+        int skipLength;
+        if((op & 0xF) != 0) {
+            if(hasNextWord(op >>> 4 & 0x3F))
+                insn |= (long) read(pc + length++ & 0xFFFF) << 16;
+            if(hasNextWord(op >>> 10))
+                insn |= (long) read(pc + length++ & 0xFFFF) << 32;
+            cycles = CYCLES[op & 0xF];
+            skipLength = length;
+        } else {
+            if(hasNextWord(op >>> 10))
+                insn |= (long) read(pc + length++ & 0xFFFF) << 32;
+            cycles = (op >>> 4 & 0x3F) == OP_JSR ? 2 : 0;
+            /* The opcode of a skipped non-basic instruction is stepped over as if it were a value. */
+            skipLength = hasNextWord(op >>> 4 & 0x3F) ? length + 1 : length;
+        }
+        cycles += length - 1;
+        insn |= (long) length << 48 | (long) cycles << 50 | (long) skipLength << 54;
+        if(breakpoints != null && (breakpoints[pc >>> 6] & 1L << pc) != 0)
+            insn |= BREAKPOINT;
+        int page = pc >>> PAGE_SHIFT;
+        if(decoded[page] == null)
+            decoded[page] = new long[1 << PAGE_SHIFT];
+        decoded[page][pc & PAGE_MASK] = insn;
+        pageFlags[page] |= PAGE_CODE;
+        pageFlags[(pc + length - 1 & 0xFFFF) >>> PAGE_SHIFT] |= PAGE_CODE;
+        return insn;
+    }
+    
+    /**
+     * Gets if a value opcode is followed by a next word.
      * @param op The opcode.
-     * @param modify Modify the stack pointer.
-     * @return The v from the opcode.
+     * @return If the value takes a next word.
      */
-    public Object getValue(int op, boolean modify) {
+    static boolean hasNextWord(int op) {
+        return op >= 0x10 && op <= 0x17 || op == 0x1E || op == 0x1F;
+    }
+    
+    /**
+     * Skips over the instruction at the program counter, a skipped instruction
+     * costs a cycle for each of the words stepped over.
+     * @return The amount of cycles taken by the skip.
+     */
+    private int skip() {
+        long insn = fetch(r[PC]);
+        int length = (int) (insn >>> 54 & 0x3);
+        r[PC] += length;
+        return length;
+    }
+    
+    /**
+     * Writes a value to an operand location.
+     * @param location The location returned by {@link #getLocation(int, int, int)}.
+     * @param value The value to write.
+     */
+    private void write(int location, int value) {
+        if(location < REGISTER)
+            store(location, value);
+        else
+            r[location - REGISTER] = (char) value;
+    }
+    
+    /**
+     * Reads a word of memory.
+     * @param address The address of the word.
+     * @return The value of the word.
+     */
+    char read(int address) {
+        return m[address >>> PAGE_SHIFT][address & PAGE_MASK];
+    }
+    
+    /**
+     * Writes a value to a word of memory.
+     * @param address The address of the word.
+     * @param value The value to write.
+     * @return If the write modified a decoded instruction.
+     */
+    boolean store(int address, int value) {
+        if(pageFlags[address >>> PAGE_SHIFT] != 0)
+            return storeFlagged(address, value);
+        m[address >>> PAGE_SHIFT][address & PAGE_MASK] = (char) value;
+        return false;
+    }
+    
+    /**
+     * Writes a value to a word of a flagged page of memory, copying the page first
+     * if it is shared.
+     * @param address The address of the word.
+     * @param value The value to write, compiled blocks may pass it unmasked.
+     * @return If the write modified a decoded instruction, hit a watchpoint or was
+     *         passed to a {@link Device}.
+     */
+    private boolean storeFlagged(int address, int value) {
+        /* Devices see the word that was written, the same as from the interpreter. */
+        value &= 0xFFFF;
+        int page = address >>> PAGE_SHIFT;
+        boolean invalidated = storePage(address, value);
+        if((pageFlags[page] & PAGE_WATCH) != 0 && isWatched(address, WATCH_WRITE)) {
+            /* A compiled block leaves after the write as if it had modified code. */
+            watchAddress = address;
+            invalidated = true;
+        }
+        if((pageFlags[page] & PAGE_DEVICE) != 0) {
+            /* The device may have poked a word of the running block. */
+            pageDevices[page].write(this, address, value);
+            invalidated = true;
+        }
+        return invalidated;
+    }
+    
+    /**
+     * Writes a value to a word of a flagged page of memory without checking the
+     * watchpoints or passing the write to a {@link Device}.
+     * @param address The address of the word.
+     * @param value The value to write.
+     * @return If the write modified a decoded instruction.
+     */
+    private boolean storePage(int address, int value) {
+        int page = address >>> PAGE_SHIFT;
+        if((pageFlags[page] & PAGE_SHARED) != 0) {
+            m[page] = m[page].clone();
+            pageFlags[page] &= ~PAGE_SHARED;
+        }
+        m[page][address & PAGE_MASK] = (char) value;
+        if((pageFlags[page] & PAGE_VIDEO) != 0)
+            videoChanged = true;
+        return (pageFlags[page] & PAGE_CODE) != 0 && invalidate(address);
+    }
+    
+    /**
+     * Requests that a frame of video memory is published, the request is checked
+     * whenever the program branches and a frame is also published once the program
+     * halts. This may be called from any thread.
+     */
+    void requestFrame() {
+        request(REQUEST_FRAME);
+    }
+    
+    /**
+     * Publishes a copy of video memory to {@link #frames} if it has been written since
+     * the last frame, which copies the pages of video memory. This may only be called
+     * on the thread that runs this {@link Cpu}.
+     */
+    void publishFrame() {
+        if(!videoChanged)
+            return;
+        char[] frame = frames.getBack();
+        for(int i = 0; i < AMOUNT_VIDEO_WORDS >>> PAGE_SHIFT; i++)
+            System.arraycopy(m[(VIDEO_RAM >>> PAGE_SHIFT) + i], 0, frame, i << PAGE_SHIFT, 1 << PAGE_SHIFT);
+        frames.publish();
+        videoChanged = false;
+    }
+    
+    /**
+     * Invalidates the decoded instructions that contain a word of memory, along
+     * with the compiled blocks that could contain them.
+     * @param address The address of the word.
+     * @return If a decoded instruction contained the word.
+     */
+    private boolean invalidate(int address) {
+        boolean invalidated = false;
+        for(int i = 0; i < 3; i++) {
+            int pc = address - i & 0xFFFF;
+            long[] page = decoded[pc >>> PAGE_SHIFT];
+            if(page != null && (page[pc & PAGE_MASK] >>> 48 & 0x3) > i) {
+                page[pc & PAGE_MASK] = 0;
+                /* A block ending in an IFx can skip over the first instruction of the next page. */
+                blocks[pc >>> PAGE_SHIFT] = null;
+                blocks[(pc - 1 & 0xFFFF) >>> PAGE_SHIFT] = null;
+                invalidated = true;
+            }
+        }
+        return invalidated;
+    }
+    
+    /**
+     * Gets the location of a non-literal value opcode. Memory locations are the
+     * address itself and registers are flagged with {@link #REGISTER}. The register
+     * ranges are tested before the switch to keep this method small enough to inline.
+     * @param op The opcode.
+     * @param address The address of the next word of the value.
+     * @param word The next word of the value.
+     * @return The location of the value from the opcode.
+     */
+    private int getLocation(int op, int address, int word) {
+        if(op < 0x08)
+            return REGISTER | op;
+        if(op < 0x10)
+            return r[op - 0x08];
+        if(op < 0x18)
+            return r[op - 0x10] + word & 0xFFFF;
         switch(op) {
-            
-            case 0x00:
-            case 0x01:
-            case 0x02:
-            case 0x03:
-            case 0x04:
-            case 0x05:
-            case 0x06:
-            case 0x07:
-                return r[op];
                 
-            case 0x08:
-            case 0x09:
-            case 0x0A:
-            case 0x0B:
-            case 0x0C:
-            case 0x0D:
-            case 0x0E:
-            case 0x0F:
-                return m[r[op - 0x08].v];
+            case 0x18:
+                return r[SP]++;
+                
+            case 0x19:
+                return r[SP];      
+                
+            case 0x1A:
+                return --r[SP];
             
-            case 0x10:
-            case 0x11:
-            case 0x12:
-            case 0x13:
-            case 0x14:
-            case 0x15:
-            case 0x16:
-            case 0x17:
-                r[C].v ++;
-                return m[r[op - 0x10].v + m[r[PC].v++].v];
+            case 0x1B:
+                return REGISTER | SP; 
+            
+            case 0x1C:
+                return REGISTER | PC;
+                
+            case 0x1D:
+                return REGISTER | O;
+                
+            case 0x1E:
+                return word;
+                
+            case 0x1F:
+                return address & 0xFFFF;
+                
+            default:
+                throw new RuntimeException("Unknown op in fetch: " + op);
+                
+        }
+    }
+    
+    /**
+     * Gets the value from a value opcode.
+     * @param op The opcode.
+     * @param word The next word of the value.
+     * @return The value from the opcode.
+     */
+    private int getValue(int op, int word) {
+        if(op >= 0x20)
+            return op - 0x20;
+        if(op < 0x08)
+            return r[op];
+        if(op < 0x10)
+            return read(r[op - 0x08]);
+        if(op < 0x18)
+            return read(r[op - 0x10] + word & 0xFFFF);
+        switch(op) {
                 
             case 0x18:
-                return m[modify ? r[SP].v++ : r[SP].v];
+                return read(r[SP]++);
                 
             case 0x19:
-                return m[r[SP].v];      
+                return read(r[SP]);      
                 
             case 0x1A:
-                return m[modify ? --r[SP].v : r[SP].v];
+                return read(--r[SP]);
             
             case 0x1B:
                 return r[SP]; 
@@ -327,46 +1256,10 @@ public final class Cpu {
                 return r[O];
                 
             case 0x1E:
-                r[C].v++;
-                return m[m[r[PC].v++].v];
+                return read(word);
                 
             case 0x1F:
-                r[C].v++;
-                return m[r[PC].v++];
-                
-            case 0x20:
-            case 0x21:
-            case 0x22:
-            case 0x23:
-            case 0x24:
-            case 0x25:
-            case 0x26:
-            case 0x27:
-            case 0x28:
-            case 0x29:
-            case 0x2A:
-            case 0x2B:
-            case 0x2C:
-            case 0x2D:
-            case 0x2E:
-            case 0x2F:
-            case 0x30:
-            case 0x31:
-            case 0x32:
-            case 0x33:
-            case 0x34:
-            case 0x35:
-            case 0x36:
-            case 0x37:
-            case 0x38:
-            case 0x39:
-            case 0x3A:
-            case 0x3B:
-            case 0x3C:
-            case 0x3D:
-            case 0x3E:
-            case 0x3F:
-                return op - 0x20;
+                return word;
                 
             default:
                 throw new RuntimeException("Unknown op in fetch: " + op);
@@ -374,28 +1267,394 @@ public final class Cpu {
         }
     }
     
+    /**
+     * Arms a breakpoint, a run stops with {@link #STOP_BREAK} before the instruction
+     * at the address is executed. The instruction is marked in its decoded entry, so
+     * the other instructions are not slowed down, and compiled blocks end before it.
+     * @param address The address of the instruction.
+     */
+    public void setBreakpoint(int address) {
+        breakConditions.remove(address & 0xFFFF);
+        markBreakpoint(address & 0xFFFF, true);
+    }
+    
+    /**
+     * Arms a conditional breakpoint, a run stops with {@link #STOP_BREAK} before the
+     * instruction at the address is executed while a register holds a value.
+     * @param address The address of the instruction.
+     * @param register The index of the register, from 0 for A to {@link #O}.
+     * @param value The value of the register to stop at.
+     */
+    public void setBreakpoint(int address, int register, int value) {
+        if(register < 0 || register > O)
+            throw new RuntimeException("Unknown register index: " + register);
+        breakConditions.put(address & 0xFFFF, register << 16 | value & 0xFFFF);
+        markBreakpoint(address & 0xFFFF, true);
+    }
+    
+    /**
+     * Disarms the breakpoint at an address.
+     * @param address The address of the instruction.
+     */
+    public void clearBreakpoint(int address) {
+        breakConditions.remove(address & 0xFFFF);
+        markBreakpoint(address & 0xFFFF, false);
+    }
+    
+    /**
+     * Marks or unmarks a breakpoint in the decoded instructions, and drops the
+     * compiled blocks of its page so that they are compiled around it.
+     * @param address The address of the breakpoint.
+     * @param armed The breakpoint is armed.
+     */
+    private void markBreakpoint(int address, boolean armed) {
+        if(breakpoints == null)
+            breakpoints = new long[AMOUNT_MEMORY >>> 6];
+        if(((breakpoints[address >>> 6] & 1L << address) != 0) != armed)
+            amountBreakpoints += armed ? 1 : -1;
+        if(armed)
+            breakpoints[address >>> 6] |= 1L << address;
+        else
+            breakpoints[address >>> 6] &= ~(1L << address);
+        if(decoded == null)
+            return;
+        int page = address >>> PAGE_SHIFT;
+        long[] pageInsns = decoded[page];
+        if(pageInsns != null && pageInsns[address & PAGE_MASK] != 0)
+            pageInsns[address & PAGE_MASK] = armed ? pageInsns[address & PAGE_MASK] | BREAKPOINT : pageInsns[address & PAGE_MASK] & ~BREAKPOINT;
+        blocks[page] = null;
+        heat[page] = null;
+    }
+    
+    /**
+     * Gets if a run stops at the marked breakpoint at an address, which it does unless
+     * its condition does not hold or the run has resumed from it.
+     * @param pc The address of the breakpoint.
+     * @return If the run stops.
+     */
+    private boolean stops(int pc) {
+        if(pc == resumeAt) {
+            resumeAt = -1;
+            return false;
+        }
+        Integer condition = breakConditions.get(pc);
+        if(condition != null && r[condition >>> 16] != (condition & 0xFFFF))
+            return false;
+        resumeAt = pc;
+        return true;
+    }
+    
+    /**
+     * Arms a watchpoint, a run stops with {@link #STOP_WATCH} after an instruction
+     * reads or writes a word in the range. Writes are caught by flagging the pages of
+     * the range. Reads are checked before each instruction, and blocks are not compiled
+     * while a watchpoint on reads is armed.
+     * @param start The first address of the range.
+     * @param end The last address of the range.
+     * @param access {@link #WATCH_READ}, {@link #WATCH_WRITE} or both.
+     */
+    public void setWatchpoint(int start, int end, int access) {
+        if(start < 0 || end >= AMOUNT_MEMORY || start > end)
+            throw new RuntimeException("Invalid watchpoint range: " + start + " to " + end);
+        if(amountWatchpoints * 3 == watchpoints.length) {
+            int[] newWatchpoints = new int[watchpoints.length * 2];
+            System.arraycopy(watchpoints, 0, newWatchpoints, 0, watchpoints.length);
+            watchpoints = newWatchpoints;
+        }
+        watchpoints[amountWatchpoints * 3] = start;
+        watchpoints[amountWatchpoints * 3 + 1] = end;
+        watchpoints[amountWatchpoints * 3 + 2] = access;
+        amountWatchpoints++;
+        if((access & WATCH_READ) != 0)
+            amountReadWatchpoints++;
+        flagWatchpoints();
+    }
+    
+    /**
+     * Disarms the watchpoints of a range.
+     * @param start The first address of the range.
+     * @param end The last address of the range.
+     */
+    public void clearWatchpoint(int start, int end) {
+        for(int i = 0; i < amountWatchpoints;) {
+            if(watchpoints[i * 3] != start || watchpoints[i * 3 + 1] != end) {
+                i++;
+                continue;
+            }
+            if((watchpoints[i * 3 + 2] & WATCH_READ) != 0)
+                amountReadWatchpoints--;
+            System.arraycopy(watchpoints, (i + 1) * 3, watchpoints, i * 3, (--amountWatchpoints - i) * 3);
+        }
+        flagWatchpoints();
+    }
+    
+    /**
+     * Gets the address of the watched word that stopped the last run.
+     * @return The address, or -1 if the last run was not stopped by a watchpoint.
+     */
+    public int getWatchAddress() {
+        return watchAddress;
+    }
+    
+    /**
+     * Flags the pages that hold a word of a watchpoint.
+     */
+    private void flagWatchpoints() {
+        if(pageFlags == null)
+            return;
+        for(int i = 0; i < AMOUNT_PAGES; i++)
+            pageFlags[i] &= ~PAGE_WATCH;
+        for(int i = 0; i < amountWatchpoints; i++)
+            for(int page = watchpoints[i * 3] >>> PAGE_SHIFT; page <= watchpoints[i * 3 + 1] >>> PAGE_SHIFT; page++)
+                pageFlags[page] |= PAGE_WATCH;
+    }
+    
+    /**
+     * Attaches a {@link Device} to a range of whole pages of memory. Writes of the
+     * program to the range are passed to {@link Device#write(Cpu, int, int)} after
+     * the word has been written, while reads are served from memory like any other
+     * word, so the device has to keep the words that the program reads current with
+     * {@link #poke(int, int)}. The pages of ordinary memory are not checked for
+     * devices. This may not be called while the {@link Cpu} is running.
+     * @param device The {@link Device} to attach.
+     * @param start The first address of the range, the start of a page.
+     * @param end The last address of the range, the end of a page.
+     */
+    public void attach(Device device, int start, int end) {
+        if(start < 0 || end >= AMOUNT_MEMORY || start > end || (start & PAGE_MASK) != 0 || (end & PAGE_MASK) != PAGE_MASK)
+            throw new RuntimeException("Devices are attached to whole pages of " + (1 << PAGE_SHIFT) + " words: " + start + " to " + end);
+        for(int page = start >>> PAGE_SHIFT; page <= end >>> PAGE_SHIFT; page++)
+            if(pageDevices[page] != null)
+                throw new RuntimeException("A device is already attached to the page at " + (page << PAGE_SHIFT));
+        for(int page = start >>> PAGE_SHIFT; page <= end >>> PAGE_SHIFT; page++)
+            pageDevices[page] = device;
+        boolean attached = false;
+        for(int i = 0; i < devices.length; i++)
+            if(devices[i] == device)
+                attached = true;
+        if(!attached) {
+            Device[] newDevices = new Device[devices.length + 1];
+            System.arraycopy(devices, 0, newDevices, 0, devices.length);
+            newDevices[devices.length] = device;
+            devices = newDevices;
+        }
+        flagDevices();
+    }
+    
+    /**
+     * Detaches a {@link Device} from every page it is attached to.
+     * @param device The {@link Device} to detach.
+     */
+    public void detach(Device device) {
+        for(int page = 0; page < AMOUNT_PAGES; page++)
+            if(pageDevices[page] == device)
+                pageDevices[page] = null;
+        int amountDevices = 0;
+        for(int i = 0; i < devices.length; i++)
+            if(devices[i] != device)
+                devices[amountDevices++] = devices[i];
+        if(amountDevices != devices.length) {
+            Device[] newDevices = new Device[amountDevices];
+            System.arraycopy(devices, 0, newDevices, 0, amountDevices);
+            devices = newDevices;
+        }
+        flagDevices();
+    }
+    
+    /**
+     * Flags the pages that a {@link Device} is attached to.
+     */
+    private void flagDevices() {
+        if(pageFlags == null)
+            return;
+        for(int i = 0; i < AMOUNT_PAGES; i++) {
+            if(pageDevices[i] != null)
+                pageFlags[i] |= PAGE_DEVICE;
+            else
+                pageFlags[i] &= ~PAGE_DEVICE;
+        }
+    }
+    
+    /**
+     * Services every attached {@link Device}.
+     */
+    private void serviceDevices() {
+        Device[] devices = this.devices;
+        for(int i = 0; i < devices.length; i++)
+            devices[i].service(this);
+    }
+    
+    /**
+     * Reads a word of memory for a {@link Device}. This may only be called on the
+     * thread that runs this {@link Cpu}, such as from the callbacks of a device.
+     * @param address The address of the word.
+     * @return The value of the word.
+     */
+    public int peek(int address) {
+        return read(address & 0xFFFF);
+    }
+    
+    /**
+     * Writes a word of memory for a {@link Device}, the write is not passed to a
+     * device or checked against the watchpoints. This may only be called on the
+     * thread that runs this {@link Cpu}, such as from the callbacks of a device.
+     * @param address The address of the word.
+     * @param value The value to write.
+     */
+    public void poke(int address, int value) {
+        address &= 0xFFFF;
+        if(pageFlags[address >>> PAGE_SHIFT] != 0)
+            storePage(address, value);
+        else
+            m[address >>> PAGE_SHIFT][address & PAGE_MASK] = (char) value;
+    }
+    
+    /**
+     * Gets if a word of memory is watched.
+     * @param address The address of the word.
+     * @param access The access to the word.
+     * @return If a watchpoint on the access holds the word.
+     */
+    private boolean isWatched(int address, int access) {
+        for(int i = 0; i < amountWatchpoints; i++)
+            if((watchpoints[i * 3 + 2] & access) != 0 && address >= watchpoints[i * 3] && address <= watchpoints[i * 3 + 1])
+                return true;
+        return false;
+    }
+    
+    /**
+     * Checks the words of memory that an instruction is about to read against the
+     * watchpoints on reads. SET does not read a, and a literal a is swapped with b
+     * the same way {@link #run(long, boolean)} does.
+     * @param insn The decoded instruction.
+     */
+    private void watchReads(long insn) {
+        if(amountReadWatchpoints == 0)
+            return;
+        int op = (int) insn & 0xFFFF;
+        int sp = r[SP];
+        if((op & 0xF) == 0) {
+            watchRead(op >>> 10, (int) (insn >>> 32) & 0xFFFF, sp);
+            return;
+        }
+        int a = op >>> 4 & 0x3F;
+        int b = op >>> 10;
+        if(a >= 0x20) {
+            if((op & 0xF) != OP_SET)
+                watchRead(b, (int) (insn >>> 32) & 0xFFFF, sp);
+            return;
+        }
+        if((op & 0xF) != OP_SET)
+            watchRead(a, (int) (insn >>> 16) & 0xFFFF, sp);
+        /* The stack pointer is moved by a before b is read. */
+        if(a == 0x18)
+            sp++;
+        else if(a == 0x1A)
+            sp--;
+        watchRead(b, (int) (insn >>> 32) & 0xFFFF, sp);
+    }
+    
+    /**
+     * Checks the word of memory read by a value against the watchpoints on reads.
+     * @param op The value opcode.
+     * @param word The next word of the value.
+     * @param sp The stack pointer when the value is read.
+     */
+    private void watchRead(int op, int word, int sp) {
+        int address;
+        if(op >= 0x08 && op < 0x10)
+            address = r[op - 0x08];
+        else if(op >= 0x10 && op < 0x18)
+            address = r[op - 0x10] + word & 0xFFFF;
+        else if(op == 0x18 || op == 0x19)
+            address = sp & 0xFFFF;
+        else if(op == 0x1A)
+            address = sp - 1 & 0xFFFF;
+        else if(op == 0x1E)
+            address = word;
+        else
+            return;
+        if((pageFlags[address >>> PAGE_SHIFT] & PAGE_WATCH) != 0 && isWatched(address, WATCH_READ))
+            watchAddress = address;
+    }
+    
     /**
      * Mount the memory of a program onto the memory of the {@link Cpu}.
      * @param is The {@link InputStream} to mount the memory from.
      */
     public void mount(InputStream is) throws IOException {
+        mount(Loader.load(is));
+    }
+    
+    /**
+     * Mount the memory of a program onto the memory of the {@link Cpu}.
+     * @param file The file to map the memory from.
+     */
+    public void mount(File file) throws IOException {
+        mount(Loader.load(file));
+    }
+    
+    /**
+     * Mount the memory of a program onto the memory of the {@link Cpu}, the words
+     * are copied in bulk a page at a time.
+     * @param words The big-endian words of the program.
+     */
+    public void mount(CharBuffer words) {
         initialize();
-        int available = is.available();
-        if(available % 2 != 0)
-            throw new IOException();
-        int offset = 0;
-        while((available -= 2) >= 0) {
-            m[offset++].v = is.read() << 8 | is.read();
+        for(int i = 0; words.hasRemaining(); i++) {
+            char[] page = new char[1 << PAGE_SHIFT];
+            words.get(page, 0, Math.min(page.length, words.remaining()));
+            m[i] = page;
+            pageFlags[i] &= ~PAGE_SHARED;
         }
     }
     
     /**
-     * Mount the memory of a program onto the memory of the {@link Cpu}.
+     * Mount the memory of a program onto the memory of the {@link Cpu}, the words are
+     * loaded without passing them to devices or checking the watchpoints.
      * @param memory The short array that represents the memory of the program.
      */
     public void mount(int[] memory) {
         initialize();
         for(int i = 0; i < memory.length; i++) 
-            m[i].v = memory[i];
+            poke(i, memory[i]);
+    }
+    
+    /**
+     * Takes a snapshot of the state of this {@link Cpu}. The pages of memory are
+     * shared with the snapshot instead of copied, so this takes time in the amount
+     * of pages. This may not be called while the {@link Cpu} is running.
+     * @return The snapshot.
+     */
+    public Snapshot snapshot() {
+        for(int i = 0; i < AMOUNT_PAGES; i++)
+            pageFlags[i] |= PAGE_SHARED;
+        return new Snapshot(m.clone(), r.clone(), cycles, halted);
+    }
+    
+    /**
+     * Restores the state of this {@link Cpu} from a snapshot, sharing its pages
+     * of memory until they are written.
+     * @param snapshot The snapshot to restore.
+     */
+    public void restore(Snapshot snapshot) {
+        initialize();
+        System.arraycopy(snapshot.pages, 0, m, 0, AMOUNT_PAGES);
+        System.arraycopy(snapshot.registers, 0, r, 0, r.length);
+        cycles = snapshot.cycles;
+        halted = snapshot.halted;
+    }
+    
+    /**
+     * Forks this {@link Cpu} into a new {@link Cpu} with the same state, the pages
+     * of memory are shared between both until they are written. The attached devices
+     * are not forked.
+     * @return The new {@link Cpu}.
+     */
+    public Cpu fork() {
+        Cpu cpu = new Cpu();
+        cpu.restore(snapshot());
+        cpu.jit = jit;
+        return cpu;
     }
 }
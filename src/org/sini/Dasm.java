@@ -2,6 +2,8 @@ package org.sini;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.CharBuffer;
+import java.util.Arrays;
 
 /**
  * Dasm.java
@@ -9,54 +11,448 @@ import java.io.InputStream;
  * @author RuneTekk Development (SiniSoul)
  */
 public final class Dasm {
-    
+
+    /**
+     * The placeholder for the next word in the names of the values.
+     */
+    private static final String NEXT_WORD = "%nw%";
+
+    /**
+     * The indentation of an instruction that may be skipped.
+     */
+    private static final String TAB = "    ";
+
+    /**
+     * The hexadecimal digits.
+     */
+    private static final char[] DIGITS = "0123456789abcdef".toCharArray();
+
+    /**
+     * The flag of a word that starts a reachable instruction.
+     */
+    private static final int CODE = 0x1;
+
+    /**
+     * The flag of a word that is the next word of a reachable instruction.
+     */
+    private static final int OPERAND = 0x2;
+
+    /**
+     * The flag of a word that is jumped to.
+     */
+    private static final int TARGET = 0x4;
+
+    /**
+     * The flag of a word that is called as a sub routine.
+     */
+    private static final int CALLED = 0x8;
+
+    /**
+     * The flag of a word that starts a basic block.
+     */
+    private static final int LEADER = 0x10;
+
+    /**
+     * The amount of data words written on each line.
+     */
+    private static final int DATA_PER_LINE = 8;
+
     /**
-     * Mount the memory of a program onto the memory of the {@link Cpu}.
+     * The names of the values before their next word, or the whole names if they do
+     * not take a next word.
+     */
+    private static final String[] VALUE_PREFIXES = new String[Ops.V_NAMES.length];
+
+    /**
+     * The names of the values after their next word, or null if they do not take a
+     * next word.
+     */
+    private static final String[] VALUE_SUFFIXES = new String[Ops.V_NAMES.length];
+
+    static {
+        for(int i = 0; i < Ops.V_NAMES.length; i++) {
+            int index = Ops.V_NAMES[i].indexOf(NEXT_WORD);
+            if(index < 0)
+                VALUE_PREFIXES[i] = Ops.V_NAMES[i];
+            else {
+                VALUE_PREFIXES[i] = Ops.V_NAMES[i].substring(0, index);
+                VALUE_SUFFIXES[i] = Ops.V_NAMES[i].substring(index + NEXT_WORD.length());
+            }
+        }
+    }
+
+    /**
+     * Disassembles a programs instructions from a stream into an ASM code string.
      * @param is The {@link InputStream} to get the code from to disassemble.
+     * @return The ASM code string.
      */
     public String disassemble(InputStream is) throws IOException {
-        int available = is.available();
-        if(available % 2 != 0)
-            throw new IOException();
-        int[] memory = new int[available/2];
-        int offset = 0;
-        while((available -= 2) >= 0) {
-            memory[offset++] = is.read() << 8 | is.read();
-        }
-        return disassemble(memory);
+        StringBuilder code = new StringBuilder();
+        disassemble(Loader.load(is), code);
+        return code.toString();
     }
-    
+
     /**
      * Disassembles a programs instructions into an ASM code string.
      * @param memory The program memory.
      * @return The ASM code string.
      */
     public String disassemble(int[] memory) {
-        String code = "";
+        char[] words = new char[memory.length];
+        for(int i = 0; i < memory.length; i++)
+            words[i] = (char) memory[i];
+        StringBuilder code = new StringBuilder();
+        try {
+            disassemble(CharBuffer.wrap(words), code);
+        } catch(IOException ex) {
+            /* A StringBuilder does not throw. */
+            throw new RuntimeException(ex);
+        }
+        return code.toString();
+    }
+
+    /**
+     * Disassembles a programs instructions, writing the ASM code as it is decoded.
+     * @param memory The words of the program memory, from their current position.
+     * @param out The {@link Appendable} to write the ASM code to.
+     * @throws IOException An I/O exception was thrown while writing the code.
+     */
+    public void disassemble(CharBuffer memory, Appendable out) throws IOException {
+        int start = memory.position();
+        int length = memory.remaining();
         int position = 0;
         int tabulate = 0;
-        while(position < memory.length) {
+        while(position < length) {
             int oldPosition = position;
-            int opcodeValue = memory[position++];
+            int opcodeValue = memory.get(start + position++);
             int insnOpcode = (opcodeValue & 0xF) != 0 ? opcodeValue & 0xF : opcodeValue & 0x3F0;
             int arguments = (insnOpcode & 0xF) == 0 ? 1 : 2;
-            boolean doTabulate = insnOpcode >= Ops.OP_IFE && insnOpcode <= Ops.OP_IFB ? true : false;
+            boolean doTabulate = insnOpcode >= Ops.OP_IFE && insnOpcode <= Ops.OP_IFB;
             for(int tab = 0; tab < tabulate; tab++)
-                code += "    ";
-            code += Ops.OP_NAMES[insnOpcode] + " ";
+                out.append(TAB);
+            out.append(insnOpcode < Ops.OP_NAMES.length ? Ops.OP_NAMES[insnOpcode] : null).append(' ');
             tabulate = tabulate < 1 ? 0 : --tabulate;
             for(int argument = 0; argument < arguments; argument++) {
-                code += argument > 0 ? " " : "";
+                if(argument > 0)
+                    out.append(' ');
                 int valueOpcode = (opcodeValue & 0xF) == 0 ? opcodeValue >> 10 : argument == 0 ? opcodeValue >> 4 & 0x3F : opcodeValue >> 10;
-                String valueName = Ops.V_NAMES[valueOpcode];
-                while(valueName.indexOf("%nw%") != -1) {
-                    valueName = valueName.replaceFirst("%nw%", "0x" + Integer.toHexString(memory[position++]));
+                out.append(VALUE_PREFIXES[valueOpcode]);
+                if(VALUE_SUFFIXES[valueOpcode] != null) {
+                    if(position >= length)
+                        throw new RuntimeException("The instruction at 0x" + Integer.toHexString(oldPosition) + " is missing its next word...");
+                    appendHex(out, memory.get(start + position++));
+                    out.append(VALUE_SUFFIXES[valueOpcode]);
                 }
-                code += valueName;
             }
             tabulate = doTabulate ? tabulate + 1 : tabulate;
-            code += " 0x" + Integer.toHexString(oldPosition) + (position < memory.length ? "\n" : "");
+            out.append(" ");
+            appendHex(out, oldPosition);
+            if(position < length)
+                out.append('\n');
         }
-        return code;
-    }   
+    }
+
+    /**
+     * Disassembles the instructions that can be reached from entry points, by following
+     * the jumps, calls and conditions of each basic block with a worklist. Jumped to and
+     * called words are labelled, sub routines list their callers and the words that can
+     * not be reached are written as data. An instruction that {@link Asm} would encode
+     * differently is written as data too, so that the code assembles to the same words.
+     * @param memory The words of the program memory, from their current position.
+     * @param entries The addresses of the entry points.
+     * @param out The {@link Appendable} to write the ASM code to.
+     * @throws IOException An I/O exception was thrown while writing the code.
+     */
+    public void disassemble(CharBuffer memory, int[] entries, Appendable out) throws IOException {
+        int start = memory.position();
+        int length = memory.remaining();
+        char[] words = new char[length];
+        memory.get(words);
+        memory.position(start);
+        byte[] flags = new byte[length];
+        int[] calls = new int[16];
+        int amountCalls = 0;
+        int[] work = new int[16];
+        int amountWork = 0;
+        for(int entry : entries) {
+            if(entry < 0 || entry >= length)
+                continue;
+            flags[entry] |= LEADER;
+            if(amountWork == work.length)
+                work = Arrays.copyOf(work, amountWork * 2);
+            work[amountWork++] = entry;
+        }
+        while(amountWork > 0) {
+            int address = work[--amountWork];
+            while(address < length && (flags[address] & (CODE | OPERAND)) == 0) {
+                int insn = words[address];
+                int insnLength = getLength(insn);
+                if(address + insnLength > length || !isFree(flags, address + 1, insnLength - 1))
+                    break;
+                flags[address] |= CODE;
+                for(int i = 1; i < insnLength; i++)
+                    flags[address + i] |= OPERAND;
+                int next = address + insnLength;
+                int target = -1;
+                boolean falls = true;
+                boolean call = false;
+                if((insn & 0xF) != 0) {
+                    int a = insn >>> 4 & 0x3F;
+                    int b = insn >>> 10;
+                    if((insn & 0xF) >= Ops.OP_IFE) {
+                        /* The instruction after the next one is reached when the next one is skipped. */
+                        if(next < length)
+                            target = next + getSkipLength(words[next]);
+                    } else if(a == 0x1C || a >= 0x20 && b == 0x1C) {
+                        /* A literal a is swapped with b, so it is then written to PC. */
+                        falls = false;
+                        if((insn & 0xF) == Ops.OP_SET)
+                            target = a == 0x1C ? getLiteral(b, words, address + 1) : a - 0x20;
+                    }
+                } else if((insn & 0x3F0) == Ops.OP_JSR << 4) {
+                    target = getLiteral(insn >>> 10, words, address + 1);
+                    call = true;
+                } else if((insn & 0x3F0) == 0)
+                    falls = false;
+                if(target >= 0 && target < length) {
+                    flags[target] |= falls && !call ? LEADER : LEADER | TARGET;
+                    if(call) {
+                        flags[target] |= CALLED;
+                        if(amountCalls * 2 == calls.length)
+                            calls = Arrays.copyOf(calls, calls.length * 2);
+                        calls[amountCalls * 2] = target;
+                        calls[amountCalls * 2 + 1] = address;
+                        amountCalls++;
+                    }
+                    if(amountWork == work.length)
+                        work = Arrays.copyOf(work, amountWork * 2);
+                    work[amountWork++] = target;
+                }
+                if(!falls)
+                    break;
+                if(call && next < length)
+                    flags[next] |= LEADER;
+                address = next;
+            }
+        }
+        /* The callers of each sub routine, sorted by the address of the sub routine. */
+        int[] callerStarts = new int[length + 1];
+        for(int i = 0; i < amountCalls; i++)
+            callerStarts[calls[i * 2] + 1]++;
+        for(int i = 0; i < length; i++)
+            callerStarts[i + 1] += callerStarts[i];
+        int[] callers = new int[amountCalls];
+        int[] callerPositions = Arrays.copyOf(callerStarts, length);
+        for(int i = 0; i < amountCalls; i++)
+            callers[callerPositions[calls[i * 2]]++] = calls[i * 2 + 1];
+        int amountInstructions = 0;
+        int amountBlocks = 0;
+        int amountData = 0;
+        for(int i = 0; i < length; i++) {
+            if((flags[i] & CODE) != 0) {
+                amountInstructions++;
+                if((flags[i] & LEADER) != 0)
+                    amountBlocks++;
+            } else if((flags[i] & OPERAND) == 0)
+                amountData++;
+        }
+        out.append("; Disassembled " + amountInstructions + " instructions in " + amountBlocks + " basic blocks, "
+                 + countCalled(flags) + " sub routines and " + amountData + " words of data.\n");
+        int tabulate = 0;
+        int address = 0;
+        while(address < length) {
+            if((flags[address] & CODE) == 0) {
+                int end = address + 1;
+                while(end < length && end - address < DATA_PER_LINE && (flags[end] & (CODE | TARGET)) == 0)
+                    end++;
+                if((flags[address] & TARGET) != 0)
+                    out.append('\n').append(':').append(getLabel(address)).append('\n');
+                out.append(TAB).append("DAT");
+                for(int i = address; i < end; i++) {
+                    out.append(' ');
+                    appendHex(out, words[i]);
+                }
+                out.append('\n');
+                address = end;
+                tabulate = 0;
+                continue;
+            }
+            if((flags[address] & LEADER) != 0 && address > 0)
+                out.append('\n');
+            if((flags[address] & CALLED) != 0) {
+                out.append("; Sub routine, called from");
+                for(int i = callerStarts[address]; i < callerStarts[address + 1]; i++) {
+                    out.append(i > callerStarts[address] ? ", " : " ");
+                    appendHex(out, callers[i]);
+                }
+                out.append('\n');
+            }
+            if((flags[address] & TARGET) != 0)
+                out.append(':').append(getLabel(address)).append('\n');
+            int insn = words[address];
+            int insnLength = getLength(insn);
+            out.append(TAB);
+            for(int tab = 0; tab < tabulate; tab++)
+                out.append(TAB);
+            tabulate = (insn & 0xF) >= Ops.OP_IFE ? tabulate + 1 : 0;
+            if(isEncodable(words, address)) {
+                int insnOpcode = (insn & 0xF) != 0 ? insn & 0xF : insn & 0x3F0;
+                out.append(Ops.OP_NAMES[insnOpcode]).append(' ');
+                int position = address + 1;
+                if((insn & 0xF) != 0) {
+                    position = appendValue(out, insn >>> 4 & 0x3F, words, position, flags, false);
+                    out.append(", ");
+                }
+                boolean jump = (insn & 0xF) == 0 || (insn & 0x3F0) == 0x1C << 4 && (insn & 0xF) == Ops.OP_SET;
+                appendValue(out, insn >>> 10, words, position, flags, jump);
+                out.append(" ; ");
+            } else {
+                out.append("DAT");
+                for(int i = address; i < address + insnLength; i++) {
+                    out.append(' ');
+                    appendHex(out, words[i]);
+                }
+                out.append(" ; Encoded differently by the assembler, ");
+            }
+            appendHex(out, address);
+            out.append('\n');
+            address += insnLength;
+        }
+    }
+
+    /**
+     * Counts the words that are called as sub routines.
+     * @param flags The flags of the words.
+     * @return The amount of sub routines.
+     */
+    private static int countCalled(byte[] flags) {
+        int amount = 0;
+        for(byte flag : flags)
+            if((flag & CALLED) != 0)
+                amount++;
+        return amount;
+    }
+
+    /**
+     * Gets the label of an address.
+     * @param address The address.
+     * @return The name of the label.
+     */
+    private static String getLabel(int address) {
+        String hex = Integer.toHexString(0x10000 | address);
+        return "l" + hex.substring(hex.length() - 4);
+    }
+
+    /**
+     * Writes a value of an instruction that {@link Asm} can encode.
+     * @param out The {@link Appendable} to write to.
+     * @param op The value opcode.
+     * @param words The words of the program memory.
+     * @param position The position of the next word of the value.
+     * @param flags The flags of the words.
+     * @param jump The value is the address of a jump or call, which is labelled.
+     * @return The position after the next word of the value.
+     * @throws IOException An I/O exception was thrown while writing.
+     */
+    private static int appendValue(Appendable out, int op, char[] words, int position, byte[] flags, boolean jump) throws IOException {
+        out.append(VALUE_PREFIXES[op]);
+        if(VALUE_SUFFIXES[op] == null)
+            return position;
+        int word = words[position];
+        if(jump && op == 0x1F && word < flags.length && (flags[word] & (TARGET | OPERAND)) == TARGET)
+            out.append(getLabel(word));
+        else
+            appendHex(out, word);
+        out.append(VALUE_SUFFIXES[op]);
+        return position + 1;
+    }
+
+    /**
+     * Gets if {@link Asm} would encode an instruction into the same words, it encodes
+     * literals below 0x20 inline and has no names for the unknown non-basic instructions.
+     * @param words The words of the program memory.
+     * @param address The address of the instruction.
+     * @return If the instruction can be written as code.
+     */
+    private static boolean isEncodable(char[] words, int address) {
+        int insn = words[address];
+        int position = address + 1;
+        if((insn & 0xF) == 0) {
+            if((insn & 0x3F0) != Ops.OP_JSR << 4)
+                return false;
+        } else {
+            int a = insn >>> 4 & 0x3F;
+            if(a == 0x1F && words[position] < 0x20)
+                return false;
+            if(Cpu.hasNextWord(a))
+                position++;
+        }
+        return insn >>> 10 != 0x1F || words[position] >= 0x20;
+    }
+
+    /**
+     * Gets if none of a range of words belongs to a reachable instruction.
+     * @param flags The flags of the words.
+     * @param position The position of the first word.
+     * @param amount The amount of words.
+     * @return If the words are free.
+     */
+    private static boolean isFree(byte[] flags, int position, int amount) {
+        for(int i = position; i < position + amount; i++)
+            if((flags[i] & (CODE | OPERAND)) != 0)
+                return false;
+        return true;
+    }
+
+    /**
+     * Gets the literal of a value.
+     * @param op The value opcode.
+     * @param words The words of the program memory.
+     * @param position The position of the next word of the value.
+     * @return The literal, or -1 if the value is not a literal.
+     */
+    private static int getLiteral(int op, char[] words, int position) {
+        if(op >= 0x20)
+            return op - 0x20;
+        return op == 0x1F ? words[position] : -1;
+    }
+
+    /**
+     * Gets the length of an instruction.
+     * @param insn The instruction word.
+     * @return The amount of words of the instruction.
+     */
+    private static int getLength(int insn) {
+        int length = Cpu.hasNextWord(insn >>> 10) ? 2 : 1;
+        if((insn & 0xF) != 0 && Cpu.hasNextWord(insn >>> 4 & 0x3F))
+            length++;
+        return length;
+    }
+
+    /**
+     * Gets the amount of words that the {@link Cpu} skips for an instruction.
+     * @param insn The instruction word.
+     * @return The amount of words skipped.
+     */
+    private static int getSkipLength(int insn) {
+        /* The opcode of a skipped non-basic instruction is stepped over as if it were a value. */
+        if((insn & 0xF) == 0 && Cpu.hasNextWord(insn >>> 4 & 0x3F))
+            return getLength(insn) + 1;
+        return getLength(insn);
+    }
+
+    /**
+     * Writes a value as a hexadecimal number without leading zeros.
+     * @param out The {@link Appendable} to write to.
+     * @param value The value.
+     * @throws IOException An I/O exception was thrown while writing.
+     */
+    private static void appendHex(Appendable out, int value) throws IOException {
+        out.append('0').append('x');
+        int shift = 28;
+        while(shift > 0 && (value >>> shift & 0xF) == 0)
+            shift -= 4;
+        for(; shift >= 0; shift -= 4)
+            out.append(DIGITS[value >>> shift & 0xF]);
+    }
 }
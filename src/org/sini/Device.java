@@ -0,0 +1,27 @@
+package org.sini;
+
+/**
+ * Device.java
+ * @version 1.0.0
+ * @author RuneTekk Development (SiniSoul)
+ */
+public interface Device {
+
+    /**
+     * Called on the running thread after the program has written a word of a page
+     * that the device is attached to, the word has already been written to memory.
+     * The device may update its pages with {@link Cpu#poke(int, int)}.
+     * @param cpu The {@link Cpu} that wrote the word.
+     * @param address The address of the word.
+     * @param value The value written.
+     */
+    void write(Cpu cpu, int address, int value);
+
+    /**
+     * Called on the running thread at the next branch after service has been requested
+     * with {@link Cpu#service()}, so that the device can update its pages with state
+     * gathered on other threads.
+     * @param cpu The {@link Cpu} that the device is attached to.
+     */
+    void service(Cpu cpu);
+}
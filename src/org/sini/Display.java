@@ -2,10 +2,14 @@ package org.sini;
 
 import java.awt.Color;
 import java.awt.Dimension;
-import java.awt.Font;
 import java.awt.Frame;
 import java.awt.Graphics;
 import java.awt.Toolkit;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import javax.swing.Timer;
 
 /**
  * Display.java
@@ -13,95 +17,112 @@ import java.awt.Toolkit;
  * @author RuneTekk Development (SiniSoul)
  */
 public final class Display extends Frame {
-    
-    /**
-     * The title of the display.
-     */
-    private static final String DISPLAY_TITLE = "jDCPU-16";
-    
-    /**
-     * The ratio of pixels for the width to the amount of pixels on the display.
-     */
-    private final static int WIDTH_RATIO = 14;
-    
-    /**
-     * The ratio of pixels for the height to the amount of pixels on the display.
-     */
-    private final static int HEIGHT_RATIO = 25;   
-    
+
     /**
-     * The amount of pixels in the displays width.
+     * The milliseconds between refreshes of the display, about 60 per second.
      */
-    private final static int DISPLAY_WIDTH = 32;
-    
+    private static final int REFRESH_MILLIS = 16;
+
     /**
-     * The amount of pixels in the displays height.
+     * The {@link Screen} that draws the video memory of the {@link Cpu}.
      */
-    private final static int DISPLAY_HEIGHT = 16;
-    
+    private Screen screen;
+
     /**
-     * The current {@link Cpu} that this {@link Display} is servicing.
-     */
-    private Cpu cpu;
-    
-    /** 
      * The width of the display.
      */
     private int displayWidth;
-    
-    /** 
+
+    /**
      * The height of the display.
      */
     private int displayHeight;
-    
+
+    /**
+     * The timer that requests frames from the {@link Cpu} and repaints the display
+     * once a new frame has been published.
+     */
+    private Timer timer;
+
     @Override
     public void update(Graphics g) {
         paint(g);
     }
-    
+
     @Override
     public void paint(Graphics graphics) {
-        Font titleFont = new Font("Ariel", Font.BOLD, 14);
-        Font consoleFont = new Font("MonteCarlo", Font.PLAIN, 18);
-        graphics.translate(3, 24);
-        for(int x = 0; x < DISPLAY_WIDTH; x++) {
-            for(int y = 0; y < DISPLAY_HEIGHT; y++) {
-                int value = cpu.m[Cpu.VIDEO_RAM + x + (y * DISPLAY_HEIGHT)].v;
-                int bc = value >> 12 & 0xF;
-                graphics.setColor(new Color((bc & 0x4) != 0 ? 255 : 0, 
-                                            (bc & 0x2) != 0 ? 255 : 0, 
-                                            (bc & 0x1) != 0 ? 255 : 0));
-                graphics.fillRect(x * WIDTH_RATIO, y * HEIGHT_RATIO, WIDTH_RATIO, HEIGHT_RATIO);
-                int fc = value >>> 8 & 0xF;
-                String c = "" + (char) (value & 0xFF);
-                graphics.setFont(consoleFont);
-                graphics.setColor(new Color((fc & 0x4) != 0 ? 255 : 0, 
-                                            (fc & 0x2) != 0 ? 255 : 0, 
-                                            (fc & 0x1) != 0 ? 255 : 0));
-                graphics.drawString(c, x * WIDTH_RATIO + (WIDTH_RATIO/2 - graphics.getFontMetrics().stringWidth(c)/2), y * HEIGHT_RATIO + HEIGHT_RATIO - 5);                 
+        screen.paint(graphics, 3, 24);
+    }
+
+    @Override
+    public void dispose() {
+        timer.stop();
+        super.dispose();
+    }
+
+    /**
+     * Constructs a new {@link Display}; the keys typed into the display are typed
+     * into a {@link Keyboard}.
+     * @param cpu The {@link Cpu} to create the display for.
+     * @param keyboard The {@link Keyboard} attached to the {@link Cpu}.
+     */
+    public Display(Cpu cpu, final Keyboard keyboard) {
+        this(cpu);
+        addKeyListener(new KeyAdapter() {
+            @Override
+            public void keyPressed(KeyEvent event) {
+                switch(event.getKeyCode()) {
+
+                    case KeyEvent.VK_UP:
+                        keyboard.type(Keyboard.KEY_UP);
+                        break;
+
+                    case KeyEvent.VK_DOWN:
+                        keyboard.type(Keyboard.KEY_DOWN);
+                        break;
+
+                    case KeyEvent.VK_LEFT:
+                        keyboard.type(Keyboard.KEY_LEFT);
+                        break;
+
+                    case KeyEvent.VK_RIGHT:
+                        keyboard.type(Keyboard.KEY_RIGHT);
+                        break;
+                }
+            }
+
+            @Override
+            public void keyTyped(KeyEvent event) {
+                char key = event.getKeyChar();
+                if(key != KeyEvent.CHAR_UNDEFINED)
+                    keyboard.type(key);
             }
-        }
-        graphics.setColor(Color.WHITE);
-        graphics.fillRect(0, displayHeight - 60, displayWidth, 1);
-        graphics.setFont(titleFont);
-        graphics.drawString(DISPLAY_TITLE, displayWidth/2 - graphics.getFontMetrics().stringWidth(DISPLAY_TITLE)/2, displayHeight - 60 + graphics.getFontMetrics().getHeight());   
+        });
     }
-    
+
     /**
      * Constructs a new {@link Display};
      * @param cpu The {@link Cpu} to create the display for.
      */
     public Display(Cpu cpu) {
         super("jDCPU Display");
-        displayWidth = DISPLAY_WIDTH * WIDTH_RATIO;
-        displayHeight = DISPLAY_HEIGHT * HEIGHT_RATIO + 60;
+        displayWidth = Screen.WIDTH;
+        displayHeight = Screen.HEIGHT;
         setSize(displayWidth, displayHeight);
         setBackground(Color.BLACK);
         Dimension screenSize = Toolkit.getDefaultToolkit().getScreenSize();
-        setLocation(screenSize.width/2 - displayWidth/2, 
+        setLocation(screenSize.width/2 - displayWidth/2,
                     screenSize.height/2 - displayHeight/2);
         setResizable(false);
-        this.cpu = cpu;
+        screen = new Screen(cpu);
+        timer = new Timer(REFRESH_MILLIS, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent event) {
+                if(screen.refresh())
+                    repaint();
+            }
+        });
         setVisible(true);
-    }  
+        timer.start();
+    }
 }
@@ -0,0 +1,75 @@
+package org.sini;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Frames.java
+ * @version 1.0.0
+ * @author RuneTekk Development (SiniSoul)
+ */
+final class Frames {
+
+    /**
+     * The bit of the shared frame index that is set while the shared frame has been
+     * published but not yet taken.
+     */
+    private static final int FRESH = 0x4;
+
+    /**
+     * The three copies of video memory, the frame being written by the thread that
+     * runs the {@link Cpu}, the shared frame and the frame being drawn.
+     */
+    private final char[][] frames = new char[3][Cpu.AMOUNT_VIDEO_WORDS];
+
+    /**
+     * The index of the shared frame and {@link #FRESH}, swapped by both threads so
+     * that neither waits on the other.
+     */
+    private final AtomicInteger shared = new AtomicInteger(1);
+
+    /**
+     * The index of the frame being written, only used by the thread that runs the
+     * {@link Cpu}.
+     */
+    private int back;
+
+    /**
+     * The index of the frame being drawn, only used by the drawing thread.
+     */
+    private int front = 2;
+
+    /**
+     * Gets the frame to copy video memory to before it is published.
+     * @return The frame.
+     */
+    char[] getBack() {
+        return frames[back];
+    }
+
+    /**
+     * Publishes the frame that video memory was copied to, replacing the shared frame
+     * if it has not been taken yet.
+     */
+    void publish() {
+        back = shared.getAndSet(back | FRESH) & ~FRESH;
+    }
+
+    /**
+     * Gets if a frame has been published that has not been taken yet.
+     * @return If the shared frame is fresh.
+     */
+    boolean isFresh() {
+        return (shared.get() & FRESH) != 0;
+    }
+
+    /**
+     * Takes the latest published frame, the frame stays valid until the next call.
+     * @return The latest frame, or the frame taken by the last call if none has been
+     *         published since.
+     */
+    char[] take() {
+        if(isFresh())
+            front = shared.getAndSet(front) & ~FRESH;
+        return frames[front];
+    }
+}
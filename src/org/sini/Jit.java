@@ -0,0 +1,825 @@
+package org.sini;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import static org.sini.ClassFile.*;
+import static org.sini.Ops.*;
+
+/**
+ * Jit.java
+ * @version 1.0.0
+ * @author RuneTekk Development (SiniSoul)
+ */
+final class Jit extends ClassLoader {
+
+    /**
+     * The maximum amount of instructions compiled into a single block.
+     */
+    private static final int MAXIMUM_INSTRUCTIONS = 64;
+
+    /**
+     * The internal name of the {@link Block} class.
+     */
+    private static final String BLOCK = "org/sini/Block";
+
+    /**
+     * The package that compiled blocks are defined in.
+     */
+    private static final String BLOCK_PACKAGE = "org/sini/jit/";
+
+    /**
+     * The descriptor of {@link Block#execute(Cpu, char[][], char[])}.
+     */
+    private static final String EXECUTE_DESC = "(Lorg/sini/Cpu;[[C[C)I";
+
+    /**
+     * The descriptor of {@link Block#write(Cpu, int, int)}.
+     */
+    private static final String WRITE_DESC = "(Lorg/sini/Cpu;II)Z";
+
+    /**
+     * The descriptor of {@link Block#trace(Cpu, char[], int, int, int, int)}.
+     */
+    private static final String TRACE_DESC = "(Lorg/sini/Cpu;[CIIII)V";
+
+    /**
+     * The local variables of a compiled block.
+     */
+    private static final int CPU = 1, MEMORY = 2, REGISTERS = 3, LOCATION = 4, A = 5, B = 6, VALUE = 7, TEMP = 8,
+                             DIRTY = 9, AMOUNT_LOCALS = 10;
+
+    /**
+     * The maximum depth of the operand stack of a compiled block.
+     */
+    private static final int MAXIMUM_STACK = 8;
+
+    /**
+     * The maximum amount of compiled blocks that are kept for reuse, the least
+     * recently used block is evicted first.
+     */
+    private static final int MAXIMUM_BLOCKS = 4096;
+
+    /**
+     * The amount of blocks that a class loader defines before the next is created, a
+     * loader and its classes are collected once all of its blocks have been evicted
+     * and dropped by every {@link Cpu}.
+     */
+    private static final int BLOCKS_PER_LOADER = 256;
+
+    /**
+     * The compiled blocks shared between every {@link Cpu}, keyed by their start
+     * address and the words they were compiled from, in order of use.
+     */
+    private static final Map<String, Block> BLOCKS = new LinkedHashMap<String, Block>(16, 0.75f, true) {
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Block> eldest) {
+            return size() > MAXIMUM_BLOCKS;
+        }
+    };
+
+    /**
+     * The class loader that defines the next compiled blocks, or null until the first
+     * block is defined.
+     */
+    private static Jit loader;
+
+    /**
+     * The amount of blocks that the current class loader has defined.
+     */
+    private static int amountDefined;
+
+    /**
+     * The amount of blocks that have been defined.
+     */
+    private static int amountBlocks;
+
+    /**
+     * Constructs a new {@link Jit};
+     */
+    private Jit() {
+        super(Jit.class.getClassLoader());
+    }
+
+    /**
+     * Compiles the basic block that starts at an address. A block ends after an
+     * instruction that writes the program counter, a JSR or an IFx instruction, before
+     * a halt or a breakpoint, or at the end of the page it starts in. A block compiled for a traced
+     * {@link Cpu} records each of its instructions with the {@link Tracer}.
+     * @param cpu The {@link Cpu} to read the instructions from.
+     * @param start The address of the first instruction.
+     * @return The compiled block, or null if there was nothing to compile.
+     */
+    static Block compile(Cpu cpu, int start) {
+        int pageBase = start & ~Cpu.PAGE_MASK;
+        long[] insns = new long[MAXIMUM_INSTRUCTIONS];
+        int amount = 0;
+        int skipLength = 0;
+        boolean trace = cpu.tracer != null;
+        StringBuilder key = new StringBuilder();
+        key.append((char) start).append(trace ? 'T' : 'U');
+        int pc = start;
+        while(amount < MAXIMUM_INSTRUCTIONS) {
+            long insn = cpu.fetch(pc);
+            int op = (int) insn & 0xFFFF;
+            int length = (int) (insn >>> 48 & 0x3);
+            if((pc + length - 1 & ~Cpu.PAGE_MASK) != pageBase || (op & 0x3FF) == 0 || insn < 0)
+                break;
+            insns[amount++] = insn;
+            key.append((char) op).append((char) (insn >>> 16)).append((char) (insn >>> 32));
+            pc += length;
+            if(isBranch(op)) {
+                if((op & 0xF) >= OP_IFE) {
+                    skipLength = (int) (cpu.fetch(pc & 0xFFFF) >>> 54 & 0x3);
+                    key.append((char) skipLength);
+                }
+                break;
+            }
+        }
+        if(amount == 0)
+            return null;
+        String blockKey = key.toString();
+        Block block;
+        synchronized(BLOCKS) {
+            block = BLOCKS.get(blockKey);
+        }
+        if(block == null) {
+            /* Blocks are generated outside the lock, a block generated by two threads at once is defined twice. */
+            block = generate(start, insns, amount, skipLength, trace);
+            synchronized(BLOCKS) {
+                BLOCKS.put(blockKey, block);
+            }
+        }
+        return block;
+    }
+
+    /**
+     * Gets if an instruction ends a basic block.
+     * @param op The opcode of the instruction.
+     * @return If the instruction branches.
+     */
+    private static boolean isBranch(int op) {
+        if((op & 0xF) == 0)
+            return (op >>> 4 & 0x3F) == OP_JSR;
+        if((op & 0xF) >= OP_IFE)
+            return true;
+        return getDestination(op) == 0x1C;
+    }
+
+    /**
+     * Gets the value opcode that a basic instruction writes to, a literal a is
+     * swapped with b the same way the interpreter does.
+     * @param op The opcode of the instruction.
+     * @return The value opcode of the destination, or -1 if both values are literals.
+     */
+    private static int getDestination(int op) {
+        int a = op >>> 4 & 0x3F;
+        int b = op >>> 10;
+        if(a < 0x20)
+            return a;
+        return b < 0x20 ? b : -1;
+    }
+
+    /**
+     * Gets the register that a value opcode refers to.
+     * @param op The value opcode.
+     * @return The index of the register, or -1 if the value is not a register.
+     */
+    private static int getRegister(int op) {
+        if(op < 0x08)
+            return op;
+        switch(op) {
+
+            case 0x1B:
+                return Cpu.SP;
+
+            case 0x1C:
+                return Cpu.PC;
+
+            case 0x1D:
+                return Cpu.O;
+
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Generates and defines the class of a compiled block.
+     * @param start The address of the first instruction.
+     * @param insns The decoded instructions of the block.
+     * @param amount The amount of instructions in the block.
+     * @param skipLength The skip length of the instruction after the block.
+     * @param trace Each instruction is recorded with the {@link Tracer}.
+     * @return The compiled block.
+     */
+    private static Block generate(int start, long[] insns, int amount, int skipLength, boolean trace) {
+        String name;
+        Jit loader;
+        synchronized(Jit.class) {
+            if(Jit.loader == null || amountDefined == BLOCKS_PER_LOADER) {
+                Jit.loader = new Jit();
+                amountDefined = 0;
+            }
+            amountDefined++;
+            loader = Jit.loader;
+            name = BLOCK_PACKAGE + "Block" + amountBlocks++;
+        }
+        ClassFile cf = new ClassFile(name, BLOCK);
+        cf.op1(ALOAD, 0);
+        cf.op2(INVOKESPECIAL, cf.methodRef(BLOCK, "<init>", "()V"));
+        cf.op(RETURN);
+        cf.method(ACC_PUBLIC, "<init>", "()V", 1, 1);
+        cf.op(ICONST_0);
+        cf.op1(ISTORE, DIRTY);
+        int pc = start;
+        int cycles = 0;
+        boolean returned = false;
+        for(int i = 0; i < amount; i++) {
+            long insn = insns[i];
+            int next = pc + (int) (insn >>> 48 & 0x3);
+            cycles += (int) (insn >>> 50 & 0xF);
+            returned = generate(cf, insn, pc, next, cycles, skipLength, trace);
+            pc = next;
+        }
+        if(!returned)
+            exit(cf, pc, cycles);
+        cf.method(ACC_PUBLIC, "execute", EXECUTE_DESC, MAXIMUM_STACK, AMOUNT_LOCALS);
+        byte[] bytes = cf.toByteArray();
+        try {
+            return (Block) loader.define(name.replace('/', '.'), bytes).getDeclaredConstructor().newInstance();
+        } catch(ReflectiveOperationException ex) {
+            throw new RuntimeException("Failed to define compiled block: " + ex);
+        }
+    }
+
+    /**
+     * Defines a compiled block class.
+     * @param name The binary name of the class.
+     * @param bytes The class file.
+     * @return The defined class.
+     */
+    private synchronized Class<?> define(String name, byte[] bytes) {
+        return defineClass(name, bytes, 0, bytes.length);
+    }
+
+    /**
+     * Generates the code for a single instruction.
+     * @param cf The {@link ClassFile} to write the code to.
+     * @param insn The decoded instruction.
+     * @param pc The address of the instruction.
+     * @param next The address of the instruction after it.
+     * @param cycles The cycles taken by the block up to and including the instruction.
+     * @param skipLength The skip length of the instruction after the block.
+     * @param trace The instruction is recorded with the {@link Tracer}.
+     * @return If the generated code always returns from the block.
+     */
+    private static boolean generate(ClassFile cf, long insn, int pc, int next, int cycles, int skipLength, boolean trace) {
+        int op = (int) insn & 0xFFFF;
+        int cost = (int) (insn >>> 50 & 0xF);
+        if((op & 0xF) == 0) {
+            value(cf, op >>> 10, (int) (insn >>> 32) & 0xFFFF, next);
+            if((op >>> 4 & 0x3F) != OP_JSR) {
+                if(trace) {
+                    cf.op1(ISTORE, VALUE);
+                    trace(cf, pc, op, VALUE, -1, cost);
+                } else
+                    cf.op(POP);
+                return false;
+            }
+            cf.op1(ISTORE, VALUE);
+            loadRegister(cf, Cpu.SP);
+            cf.op(ICONST_0 + 1);
+            cf.op(ISUB);
+            cf.push(0xFFFF);
+            cf.op(IAND);
+            cf.op1(ISTORE, LOCATION);
+            storeRegister(cf, Cpu.SP, LOCATION);
+            cf.op1(ALOAD, CPU);
+            cf.op1(ILOAD, LOCATION);
+            cf.push(next & 0xFFFF);
+            cf.op2(INVOKESTATIC, cf.methodRef(BLOCK, "write", WRITE_DESC));
+            cf.op(POP);
+            storeRegister(cf, Cpu.PC, VALUE);
+            if(trace)
+                trace(cf, pc, op, VALUE, -1, cost);
+            exit(cf, -1, cycles);
+            return true;
+        }
+        int a = op >>> 4 & 0x3F;
+        int b = op >>> 10;
+        int destination = getDestination(op);
+        int register = -1;
+        int aValue = 0;
+        int bValue = 0;
+        if(destination < 0) {
+            aValue = b - 0x20;
+            bValue = a - 0x20;
+            if(trace) {
+                cf.push(aValue);
+                cf.op1(ISTORE, A);
+                cf.push(bValue);
+                cf.op1(ISTORE, B);
+            }
+        } else {
+            register = getRegister(destination);
+            if(a < 0x20) {
+                if(register < 0)
+                    location(cf, a, (int) (insn >>> 16) & 0xFFFF, pc + 1);
+                value(cf, b, (int) (insn >>> 32) & 0xFFFF, next);
+            } else {
+                if(register < 0)
+                    location(cf, b, (int) (insn >>> 32) & 0xFFFF, pc + 1);
+                cf.push(a - 0x20);
+            }
+            cf.op1(ISTORE, B);
+            if((op & 0xF) != OP_SET) {
+                read(cf, register, next);
+                cf.op1(ISTORE, A);
+            }
+        }
+        if((op & 0xF) >= OP_IFE) {
+            if(destination < 0) {
+                boolean skip;
+                switch(op & 0xF) {
+
+                    case OP_IFE:
+                        skip = aValue != bValue;
+                        break;
+
+                    case OP_IFN:
+                        skip = aValue == bValue;
+                        break;
+
+                    case OP_IFG:
+                        skip = aValue <= bValue;
+                        break;
+
+                    default:
+                        skip = (aValue & bValue) == 0;
+                        break;
+                }
+                if(trace)
+                    trace(cf, pc, op, A, B, skip ? cost + skipLength : cost);
+                if(skip)
+                    exit(cf, next + skipLength, cycles + skipLength);
+                else
+                    exit(cf, next, cycles);
+                return true;
+            }
+            cf.op1(ILOAD, A);
+            cf.op1(ILOAD, B);
+            int branch;
+            switch(op & 0xF) {
+
+                case OP_IFE:
+                    branch = cf.jump(IF_ICMPNE);
+                    break;
+
+                case OP_IFN:
+                    branch = cf.jump(IF_ICMPEQ);
+                    break;
+
+                case OP_IFG:
+                    branch = cf.jump(IF_ICMPLE);
+                    break;
+
+                default:
+                    cf.op(IAND);
+                    branch = cf.jump(IFEQ);
+                    break;
+            }
+            if(trace)
+                trace(cf, pc, op, A, B, cost);
+            exit(cf, next, cycles);
+            cf.bind(branch);
+            if(trace)
+                trace(cf, pc, op, A, B, cost + skipLength);
+            exit(cf, next + skipLength, cycles + skipLength);
+            return true;
+        }
+        if(destination < 0) {
+            if(trace)
+                trace(cf, pc, op, A, B, cost);
+            return false;
+        }
+        switch(op & 0xF) {
+
+            case OP_SET:
+                write(cf, register, B);
+                break;
+
+            case OP_ADD: {
+                cf.op1(ILOAD, A);
+                cf.op1(ILOAD, B);
+                cf.op(IADD);
+                cf.op1(ISTORE, VALUE);
+                cf.op1(ILOAD, VALUE);
+                cf.push(0xFFFF);
+                int branch = cf.jump(IF_ICMPLE);
+                cf.op1(ALOAD, REGISTERS);
+                cf.push(Cpu.O);
+                cf.push(0x0001);
+                cf.op(CASTORE);
+                cf.bind(branch);
+                write(cf, register, VALUE);
+                break;
+            }
+
+            case OP_SUB: {
+                cf.op1(ILOAD, A);
+                cf.op1(ILOAD, B);
+                cf.op(ISUB);
+                cf.op1(ISTORE, VALUE);
+                cf.op1(ILOAD, VALUE);
+                int branch = cf.jump(IFGE);
+                cf.op1(ALOAD, REGISTERS);
+                cf.push(Cpu.O);
+                cf.push(0xFFFF);
+                cf.op(CASTORE);
+                cf.bind(branch);
+                write(cf, register, VALUE);
+                break;
+            }
+
+            case OP_MUL:
+                cf.op1(ILOAD, A);
+                cf.op1(ILOAD, B);
+                cf.op(IMUL);
+                cf.op1(ISTORE, VALUE);
+                write(cf, register, VALUE);
+                cf.op1(ALOAD, REGISTERS);
+                cf.push(Cpu.O);
+                cf.op1(ILOAD, VALUE);
+                cf.push(16);
+                cf.op(IUSHR);
+                cf.op(CASTORE);
+                break;
+
+            case OP_DIV: {
+                cf.op(ICONST_0);
+                cf.op1(ISTORE, VALUE);
+                cf.op(ICONST_0);
+                cf.op1(ISTORE, TEMP);
+                cf.op1(ILOAD, B);
+                int branch = cf.jump(IFEQ);
+                cf.op1(ILOAD, A);
+                cf.op1(ILOAD, B);
+                cf.op(IDIV);
+                cf.push(0xFFFF);
+                cf.op(IAND);
+                cf.op1(ISTORE, VALUE);
+                cf.op1(ILOAD, VALUE);
+                cf.push(16);
+                cf.op(ISHL);
+                cf.op1(ILOAD, B);
+                cf.op(IDIV);
+                cf.push(0xFFFF);
+                cf.op(IAND);
+                cf.op1(ISTORE, TEMP);
+                cf.bind(branch);
+                write(cf, register, VALUE);
+                storeRegister(cf, Cpu.O, TEMP);
+                break;
+            }
+
+            case OP_MOD: {
+                cf.op(ICONST_0);
+                cf.op1(ISTORE, VALUE);
+                cf.op1(ILOAD, B);
+                int branch = cf.jump(IFEQ);
+                cf.op1(ILOAD, A);
+                cf.op1(ILOAD, B);
+                cf.op(IREM);
+                cf.op1(ISTORE, VALUE);
+                cf.bind(branch);
+                write(cf, register, VALUE);
+                break;
+            }
+
+            case OP_SHL:
+                cf.op1(ILOAD, A);
+                cf.op1(ILOAD, B);
+                cf.op(ISHL);
+                cf.op1(ISTORE, VALUE);
+                cf.op1(ALOAD, REGISTERS);
+                cf.push(Cpu.O);
+                cf.op1(ILOAD, VALUE);
+                cf.push(16);
+                cf.op(IUSHR);
+                cf.op(CASTORE);
+                write(cf, register, VALUE);
+                break;
+
+            case OP_SHR:
+                cf.op1(ILOAD, A);
+                cf.op1(ILOAD, B);
+                cf.op(IUSHR);
+                cf.op1(ISTORE, VALUE);
+                write(cf, register, VALUE);
+                cf.op1(ALOAD, REGISTERS);
+                cf.push(Cpu.O);
+                cf.op1(ILOAD, VALUE);
+                cf.push(16);
+                cf.op(ISHL);
+                cf.op1(ILOAD, B);
+                cf.op(IUSHR);
+                cf.push(0xFFFF);
+                cf.op(IAND);
+                cf.op(CASTORE);
+                break;
+
+            default:
+                cf.op1(ILOAD, A);
+                cf.op1(ILOAD, B);
+                cf.op((op & 0xF) == OP_AND ? IAND : (op & 0xF) == OP_BOR ? IOR : IXOR);
+                cf.op1(ISTORE, VALUE);
+                write(cf, register, VALUE);
+                break;
+        }
+        if(trace)
+            trace(cf, pc, op, (op & 0xF) == OP_SET ? -1 : A, B, cost);
+        if(register == Cpu.PC) {
+            exit(cf, -1, cycles);
+            return true;
+        }
+        if(register < 0) {
+            cf.op1(ILOAD, DIRTY);
+            int branch = cf.jump(IFEQ);
+            exit(cf, next, cycles);
+            cf.bind(branch);
+        }
+        return false;
+    }
+
+    /**
+     * Generates the code that leaves the block, returning the cycles it took.
+     * @param cf The {@link ClassFile} to write the code to.
+     * @param next The address to continue at, or -1 if the program counter was written.
+     * @param cycles The cycles taken by the block.
+     */
+    private static void exit(ClassFile cf, int next, int cycles) {
+        if(next >= 0) {
+            cf.op1(ALOAD, REGISTERS);
+            cf.push(Cpu.PC);
+            cf.push(next & 0xFFFF);
+            cf.op(CASTORE);
+        }
+        cf.push(cycles);
+        cf.op(IRETURN);
+    }
+
+    /**
+     * Generates the code that records an instruction with the {@link Tracer}.
+     * @param cf The {@link ClassFile} to write the code to.
+     * @param pc The address of the instruction.
+     * @param op The instruction word.
+     * @param a The local variable holding the value of a, or -1 to record 0.
+     * @param b The local variable holding the value of b, or -1 to record 0.
+     * @param cycles The cycles charged for the instruction.
+     */
+    private static void trace(ClassFile cf, int pc, int op, int a, int b, int cycles) {
+        cf.op1(ALOAD, CPU);
+        cf.op1(ALOAD, REGISTERS);
+        cf.push(pc << 16 | op);
+        if(a < 0)
+            cf.op(ICONST_0);
+        else
+            cf.op1(ILOAD, a);
+        if(b < 0)
+            cf.op(ICONST_0);
+        else
+            cf.op1(ILOAD, b);
+        cf.push(cycles);
+        cf.op2(INVOKESTATIC, cf.methodRef(BLOCK, "trace", TRACE_DESC));
+    }
+
+    /**
+     * Generates the code that pushes the value of a register.
+     * @param cf The {@link ClassFile} to write the code to.
+     * @param register The index of the register.
+     */
+    private static void loadRegister(ClassFile cf, int register) {
+        cf.op1(ALOAD, REGISTERS);
+        cf.push(register);
+        cf.op(CALOAD);
+    }
+
+    /**
+     * Generates the code that stores a local variable in a register.
+     * @param cf The {@link ClassFile} to write the code to.
+     * @param register The index of the register.
+     * @param local The local variable.
+     */
+    private static void storeRegister(ClassFile cf, int register, int local) {
+        cf.op1(ALOAD, REGISTERS);
+        cf.push(register);
+        cf.op1(ILOAD, local);
+        cf.op(CASTORE);
+    }
+
+    /**
+     * Generates the code that pops the stack, leaving the old stack pointer in a local variable.
+     * @param cf The {@link ClassFile} to write the code to.
+     * @param local The local variable.
+     */
+    private static void pop(ClassFile cf, int local) {
+        loadRegister(cf, Cpu.SP);
+        cf.op1(ISTORE, local);
+        cf.op1(ALOAD, REGISTERS);
+        cf.push(Cpu.SP);
+        cf.op1(ILOAD, local);
+        cf.op(ICONST_0 + 1);
+        cf.op(IADD);
+        cf.op(CASTORE);
+    }
+
+    /**
+     * Generates the code that pushes the stack, leaving the new stack pointer in a local variable.
+     * @param cf The {@link ClassFile} to write the code to.
+     * @param local The local variable.
+     */
+    private static void push(ClassFile cf, int local) {
+        loadRegister(cf, Cpu.SP);
+        cf.op(ICONST_0 + 1);
+        cf.op(ISUB);
+        cf.push(0xFFFF);
+        cf.op(IAND);
+        cf.op1(ISTORE, local);
+        storeRegister(cf, Cpu.SP, local);
+    }
+
+    /**
+     * Generates the code that pushes the address of a register offset by a next word.
+     * @param cf The {@link ClassFile} to write the code to.
+     * @param register The index of the register.
+     * @param word The next word.
+     */
+    private static void offset(ClassFile cf, int register, int word) {
+        loadRegister(cf, register);
+        cf.push(word);
+        cf.op(IADD);
+        cf.push(0xFFFF);
+        cf.op(IAND);
+    }
+
+    /**
+     * Generates the code that stores the memory location of a value opcode in
+     * {@link #LOCATION}, mirroring {@link Cpu#getLocation(int, int, int)}.
+     * @param cf The {@link ClassFile} to write the code to.
+     * @param op The value opcode.
+     * @param word The next word of the value.
+     * @param address The address of the next word of the value.
+     */
+    private static void location(ClassFile cf, int op, int word, int address) {
+        if(op < 0x10)
+            loadRegister(cf, op - 0x08);
+        else if(op < 0x18)
+            offset(cf, op - 0x10, word);
+        else {
+            switch(op) {
+
+                case 0x18:
+                    pop(cf, LOCATION);
+                    return;
+
+                case 0x19:
+                    loadRegister(cf, Cpu.SP);
+                    break;
+
+                case 0x1A:
+                    push(cf, LOCATION);
+                    return;
+
+                case 0x1E:
+                    cf.push(word);
+                    break;
+
+                case 0x1F:
+                    cf.push(address & 0xFFFF);
+                    break;
+
+                default:
+                    throw new RuntimeException("Unknown op in fetch: " + op);
+            }
+        }
+        cf.op1(ISTORE, LOCATION);
+    }
+
+    /**
+     * Generates the code that pushes the value of a value opcode, mirroring
+     * {@link Cpu#getValue(int, int)}.
+     * @param cf The {@link ClassFile} to write the code to.
+     * @param op The value opcode.
+     * @param word The next word of the value.
+     * @param next The value of the program counter.
+     */
+    private static void value(ClassFile cf, int op, int word, int next) {
+        if(op >= 0x20) {
+            cf.push(op - 0x20);
+            return;
+        }
+        if(op < 0x08) {
+            loadRegister(cf, op);
+            return;
+        }
+        switch(op) {
+
+            case 0x18:
+                pop(cf, TEMP);
+                load(cf, TEMP);
+                return;
+
+            case 0x1A:
+                push(cf, TEMP);
+                load(cf, TEMP);
+                return;
+
+            case 0x1B:
+                loadRegister(cf, Cpu.SP);
+                return;
+
+            case 0x1C:
+                cf.push(next & 0xFFFF);
+                return;
+
+            case 0x1D:
+                loadRegister(cf, Cpu.O);
+                return;
+
+            case 0x1E:
+                cf.op1(ALOAD, MEMORY);
+                cf.push(word >>> Cpu.PAGE_SHIFT);
+                cf.op(AALOAD);
+                cf.push(word & Cpu.PAGE_MASK);
+                cf.op(CALOAD);
+                return;
+
+            case 0x1F:
+                cf.push(word);
+                return;
+        }
+        if(op < 0x10)
+            loadRegister(cf, op - 0x08);
+        else if(op < 0x18)
+            offset(cf, op - 0x10, word);
+        else
+            loadRegister(cf, Cpu.SP);
+        cf.op1(ISTORE, TEMP);
+        load(cf, TEMP);
+    }
+
+    /**
+     * Generates the code that pushes the word of memory at the address in a local
+     * variable, mirroring {@link Cpu#read(int)}.
+     * @param cf The {@link ClassFile} to write the code to.
+     * @param local The local variable.
+     */
+    private static void load(ClassFile cf, int local) {
+        cf.op1(ALOAD, MEMORY);
+        cf.op1(ILOAD, local);
+        cf.push(Cpu.PAGE_SHIFT);
+        cf.op(IUSHR);
+        cf.op(AALOAD);
+        cf.op1(ILOAD, local);
+        cf.push(Cpu.PAGE_MASK);
+        cf.op(IAND);
+        cf.op(CALOAD);
+    }
+
+    /**
+     * Generates the code that pushes the current value of the destination.
+     * @param cf The {@link ClassFile} to write the code to.
+     * @param register The register of the destination, or -1 if it is {@link #LOCATION}.
+     * @param next The value of the program counter.
+     */
+    private static void read(ClassFile cf, int register, int next) {
+        if(register == Cpu.PC)
+            cf.push(next & 0xFFFF);
+        else if(register >= 0)
+            loadRegister(cf, register);
+        else
+            load(cf, LOCATION);
+    }
+
+    /**
+     * Generates the code that writes a local variable to the destination, memory
+     * writes that modify a decoded instruction are recorded in {@link #DIRTY}.
+     * @param cf The {@link ClassFile} to write the code to.
+     * @param register The register of the destination, or -1 if it is {@link #LOCATION}.
+     * @param local The local variable.
+     */
+    private static void write(ClassFile cf, int register, int local) {
+        if(register >= 0) {
+            storeRegister(cf, register, local);
+            return;
+        }
+        cf.op1(ALOAD, CPU);
+        cf.op1(ILOAD, LOCATION);
+        cf.op1(ILOAD, local);
+        cf.op2(INVOKESTATIC, cf.methodRef(BLOCK, "write", WRITE_DESC));
+        cf.op1(ILOAD, DIRTY);
+        cf.op(IOR);
+        cf.op1(ISTORE, DIRTY);
+    }
+}
@@ -0,0 +1,180 @@
+package org.sini;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Keyboard.java
+ * @version 1.0.0
+ * @author RuneTekk Development (SiniSoul)
+ */
+public final class Keyboard implements Device, Runnable {
+
+    /**
+     * The address of the keyboard buffer that the program reads keys from.
+     */
+    public static final int BUFFER = 0x9000;
+
+    /**
+     * The amount of words in the keyboard buffer. The program reads the word at its
+     * own index in the buffer, and once the word is not 0 it takes the key, writes 0
+     * back and moves to the next word, wrapping at the end of the buffer.
+     */
+    public static final int BUFFER_SIZE = 0x10;
+
+    /**
+     * The key of the up arrow.
+     */
+    public static final int KEY_UP = 0x80;
+
+    /**
+     * The key of the down arrow.
+     */
+    public static final int KEY_DOWN = 0x81;
+
+    /**
+     * The key of the left arrow.
+     */
+    public static final int KEY_LEFT = 0x82;
+
+    /**
+     * The key of the right arrow.
+     */
+    public static final int KEY_RIGHT = 0x83;
+
+    /**
+     * The amount of keys that the ring buffer holds while the program has not taken
+     * them, a power of two.
+     */
+    private static final int AMOUNT_KEYS = 1 << 8;
+
+    /**
+     * The nanoseconds that the reading thread parks for while the ring buffer is full.
+     */
+    private static final long PARK_NANOS = 50000L;
+
+    /**
+     * The {@link Cpu} that the keyboard is attached to.
+     */
+    private final Cpu cpu;
+
+    /**
+     * The ring buffer of typed keys that have not been moved to the keyboard buffer.
+     */
+    private final int[] keys = new int[AMOUNT_KEYS];
+
+    /**
+     * The amount of keys that have been typed.
+     */
+    private final AtomicLong typed = new AtomicLong();
+
+    /**
+     * The amount of keys that have been moved to the keyboard buffer.
+     */
+    private final AtomicLong moved = new AtomicLong();
+
+    /**
+     * The amount of keys typed, only used by the typing thread.
+     */
+    private long head;
+
+    /**
+     * The amount of keys moved, only used by the thread that runs the {@link Cpu}.
+     */
+    private long tail;
+
+    /**
+     * The index of the next word of the keyboard buffer to move a key to, only used
+     * by the thread that runs the {@link Cpu}.
+     */
+    private int position;
+
+    /**
+     * The stream that the reading thread types keys from.
+     */
+    private InputStream is;
+
+    /**
+     * Constructs a new {@link Keyboard}; the keyboard is attached to the page of the
+     * keyboard buffer.
+     * @param cpu The {@link Cpu} to attach the keyboard to.
+     */
+    public Keyboard(Cpu cpu) {
+        this.cpu = cpu;
+        cpu.attach(this, BUFFER, BUFFER + (1 << Cpu.PAGE_SHIFT) - 1);
+    }
+
+    /**
+     * Types a key, the key is moved to the keyboard buffer at the next branch of the
+     * program. Only a single thread may type at a time, and the call never waits on
+     * the thread that runs the {@link Cpu}.
+     * @param key The key, a character or one of the arrow keys.
+     * @return If the key was typed, or false if the key is 0 or the ring buffer is full.
+     */
+    public boolean type(int key) {
+        key &= 0xFFFF;
+        if(key == 0 || head - moved.get() == AMOUNT_KEYS)
+            return false;
+        keys[(int) head & AMOUNT_KEYS - 1] = key;
+        typed.lazySet(++head);
+        cpu.service();
+        return true;
+    }
+
+    /**
+     * Starts a thread that types every byte read from a stream, such as the standard
+     * input when there is no display. Carriage returns and NUL bytes are not typed.
+     * @param is The {@link InputStream} to read from.
+     */
+    public void read(InputStream is) {
+        this.is = is;
+        Thread thread = new Thread(this, "Keyboard");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void run() {
+        try {
+            int key;
+            while((key = is.read()) != -1) {
+                /* A NUL byte can never be typed, it would be retried forever. */
+                if(key == '\r' || key == 0)
+                    continue;
+                while(!type(key))
+                    LockSupport.parkNanos(PARK_NANOS);
+            }
+        } catch(IOException ex) {
+            throw new RuntimeException("Exception thrown while reading keys: \n\t" + ex);
+        }
+    }
+
+    @Override
+    public void write(Cpu cpu, int address, int value) {
+        /* The program took a key, so there is room for the next. */
+        if(value == 0)
+            move(cpu);
+    }
+
+    @Override
+    public void service(Cpu cpu) {
+        move(cpu);
+    }
+
+    /**
+     * Moves the typed keys to the free words of the keyboard buffer, in order.
+     * @param cpu The {@link Cpu} that the keyboard is attached to.
+     */
+    private void move(Cpu cpu) {
+        long available = typed.get();
+        if(tail == available)
+            return;
+        while(tail < available && cpu.peek(BUFFER + position) == 0) {
+            cpu.poke(BUFFER + position, keys[(int) tail++ & AMOUNT_KEYS - 1]);
+            position = position + 1 & BUFFER_SIZE - 1;
+        }
+        moved.lazySet(tail);
+    }
+}
@@ -0,0 +1,209 @@
+package org.sini;
+
+/**
+ * Lexer.java
+ * @version 1.0.0
+ * @author RuneTekk Development (SiniSoul)
+ */
+final class Lexer {
+
+    /**
+     * The token at the end of the code.
+     */
+    static final int END = 0;
+
+    /**
+     * The token of a name, such as an instruction, register or label reference.
+     */
+    static final int NAME = 1;
+
+    /**
+     * The token of a decimal or hexadecimal number.
+     */
+    static final int NUMBER = 2;
+
+    /**
+     * The token of a label definition.
+     */
+    static final int LABEL = 3;
+
+    /**
+     * The token of an opening bracket.
+     */
+    static final int OPEN = 4;
+
+    /**
+     * The token of a closing bracket.
+     */
+    static final int CLOSE = 5;
+
+    /**
+     * The token of a plus sign.
+     */
+    static final int PLUS = 6;
+
+    /**
+     * The code being tokenized.
+     */
+    private final String code;
+
+    /**
+     * The position of the next character to read.
+     */
+    private int position;
+
+    /**
+     * The line of the next character to read.
+     */
+    private int line = 1;
+
+    /**
+     * The position of the first character of the current line.
+     */
+    private int lineStart;
+
+    /**
+     * The type of the current token.
+     */
+    int type;
+
+    /**
+     * The lower case text of the current name or label token.
+     */
+    String text;
+
+    /**
+     * The value of the current number token.
+     */
+    int value;
+
+    /**
+     * The line of the current token.
+     */
+    int tokenLine;
+
+    /**
+     * The column of the current token.
+     */
+    int tokenColumn;
+
+    /**
+     * Constructs a new {@link Lexer};
+     * @param code The code to tokenize.
+     */
+    Lexer(String code) {
+        this.code = code;
+    }
+
+    /**
+     * Reads the next token, skipping whitespace, commas and comments.
+     * @return The type of the token.
+     */
+    int next() {
+        int length = code.length();
+        while(position < length) {
+            char c = code.charAt(position);
+            if(c == '\n') {
+                line++;
+                lineStart = ++position;
+            } else if(c == ' ' || c == '\t' || c == '\r' || c == ',')
+                position++;
+            else if(c == ';') {
+                while(position < length && code.charAt(position) != '\n')
+                    position++;
+            } else
+                break;
+        }
+        tokenLine = line;
+        tokenColumn = position - lineStart + 1;
+        if(position >= length)
+            return type = END;
+        char c = code.charAt(position);
+        switch(c) {
+
+            case '[':
+                position++;
+                return type = OPEN;
+
+            case ']':
+                position++;
+                return type = CLOSE;
+
+            case '+':
+                position++;
+                return type = PLUS;
+
+            case ':':
+                position++;
+                text = name();
+                if(text.length() == 0)
+                    throw error("Expected a label name");
+                return type = LABEL;
+        }
+        if(c >= '0' && c <= '9') {
+            value = number();
+            return type = NUMBER;
+        }
+        if(isNameCharacter(c)) {
+            text = name();
+            return type = NAME;
+        }
+        throw error("Unexpected character, '" + c + '\'');
+    }
+
+    /**
+     * Reads a name.
+     * @return The lower case name.
+     */
+    private String name() {
+        int start = position;
+        while(position < code.length() && isNameCharacter(code.charAt(position)))
+            position++;
+        return code.substring(start, position).toLowerCase();
+    }
+
+    /**
+     * Reads a decimal or hexadecimal number.
+     * @return The value of the number.
+     */
+    private int number() {
+        int start = position;
+        int radix = 10;
+        if(code.startsWith("0x", position) || code.startsWith("0X", position)) {
+            radix = 16;
+            position += 2;
+        }
+        int number = 0;
+        int digits = 0;
+        while(position < code.length() && isNameCharacter(code.charAt(position))) {
+            int digit = Character.digit(code.charAt(position++), radix);
+            if(digit < 0)
+                throw error("Invalid " + (radix == 16 ? "hexadecimal" : "decimal") + " literal, '" + code.substring(start, position) + '\'');
+            number = number * radix + digit;
+            if(number > 0xFFFF)
+                throw error("Literal overflow, '" + code.substring(start, position) + '\'');
+            digits++;
+        }
+        if(digits == 0)
+            throw error("Invalid hexadecimal literal, '" + code.substring(start, position) + '\'');
+        return number;
+    }
+
+    /**
+     * Gets if a character can be part of a name.
+     * @param c The character.
+     * @return If the character is a letter, digit or underscore.
+     */
+    private static boolean isNameCharacter(char c) {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '_';
+    }
+
+    /**
+     * Creates an exception for an error at the current token.
+     * @param message The message of the error.
+     * @return The exception.
+     */
+    RuntimeException error(String message) {
+        return new RuntimeException(message + ", on line " + tokenLine + ", column " + tokenColumn);
+    }
+}
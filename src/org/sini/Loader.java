@@ -0,0 +1,144 @@
+package org.sini;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Loader.java
+ * @version 1.0.0
+ * @author RuneTekk Development (SiniSoul)
+ */
+public final class Loader {
+
+    /**
+     * The maximum length of a program image in bytes, the size of the memory.
+     */
+    private static final int MAXIMUM_LENGTH = Cpu.AMOUNT_MEMORY * 2;
+
+    /**
+     * The size of the chunks that a stream is read in.
+     */
+    private static final int CHUNK_SIZE = 8192;
+
+    /**
+     * Loads the words of a program image from a file by mapping it.
+     * @param file The file of the image.
+     * @return The big-endian words of the image.
+     * @throws IOException An I/O exception was thrown while mapping the file, or the image is invalid.
+     */
+    public static CharBuffer load(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            return map(raf.getChannel(), 0, raf.length());
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Loads the words of a program image from a stream. The remainder of a file stream
+     * is mapped, any other stream is read until its end.
+     * @param is The {@link InputStream} to load the image from.
+     * @return The big-endian words of the image.
+     * @throws IOException An I/O exception was thrown while reading the stream, or the image is invalid.
+     */
+    public static CharBuffer load(InputStream is) throws IOException {
+        if(is instanceof FileInputStream) {
+            CharBuffer words = map((FileInputStream) is);
+            if(words != null)
+                return words;
+        }
+        byte[] bytes = new byte[CHUNK_SIZE];
+        int length = 0;
+        int read;
+        while((read = is.read(bytes, length, bytes.length - length)) != -1) {
+            length += read;
+            if(length > MAXIMUM_LENGTH)
+                throw new IOException("The image is larger than the memory...");
+            if(length == bytes.length) {
+                byte[] newBytes = new byte[bytes.length * 2];
+                System.arraycopy(bytes, 0, newBytes, 0, length);
+                bytes = newBytes;
+            }
+        }
+        check(length);
+        return ByteBuffer.wrap(bytes, 0, length).slice().asCharBuffer();
+    }
+
+    /**
+     * Maps the remainder of a file stream.
+     * @param is The file stream.
+     * @return The big-endian words of the remainder, or null if the stream is not a
+     *         regular file and has to be read.
+     * @throws IOException An I/O exception was thrown while mapping, or the image is invalid.
+     */
+    private static CharBuffer map(FileInputStream is) throws IOException {
+        FileChannel channel = is.getChannel();
+        long position;
+        long size;
+        try {
+            position = channel.position();
+            size = channel.size();
+        } catch(IOException ex) {
+            /* Pipes and terminals can not be positioned. */
+            return null;
+        }
+        if(size <= position)
+            return null;
+        CharBuffer words = map(channel, position, size - position);
+        channel.position(size);
+        return words;
+    }
+
+    /**
+     * Maps a region of a file channel.
+     * @param channel The channel of the file.
+     * @param position The position of the region.
+     * @param length The length of the region in bytes.
+     * @return The big-endian words of the region.
+     * @throws IOException An I/O exception was thrown while mapping, or the image is invalid.
+     */
+    private static CharBuffer map(FileChannel channel, long position, long length) throws IOException {
+        check(length);
+        if(length == 0)
+            return CharBuffer.allocate(0);
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, length).asCharBuffer();
+    }
+
+    /**
+     * Checks the length of a program image.
+     * @param length The length of the image in bytes.
+     * @throws IOException The image is not a whole amount of words, or is larger than the memory.
+     */
+    private static void check(long length) throws IOException {
+        if(length % 2 != 0)
+            throw new IOException("The image does not hold a whole amount of words...");
+        if(length > MAXIMUM_LENGTH)
+            throw new IOException("The image is larger than the memory...");
+    }
+
+    /**
+     * Copies the words of a program image into an array.
+     * @param words The words of the image.
+     * @return The array of words.
+     */
+    public static int[] toArray(CharBuffer words) {
+        char[] chars = new char[words.remaining()];
+        words.get(chars);
+        int[] array = new int[chars.length];
+        for(int i = 0; i < chars.length; i++)
+            array[i] = chars[i];
+        return array;
+    }
+
+    /**
+     * Constructs a new {@link Loader};
+     */
+    private Loader() {}
+}
@@ -0,0 +1,252 @@
+package org.sini;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Machine.java
+ * @version 1.0.0
+ * @author RuneTekk Development (SiniSoul)
+ */
+public final class Machine implements Runnable {
+
+    /**
+     * The state of a machine that is waiting for or running a slice.
+     */
+    public static final int RUNNABLE = 0;
+
+    /**
+     * The state of a machine that is parked until it is unparked.
+     */
+    public static final int PARKED = 1;
+
+    /**
+     * The state of a machine whose program is idle, it is woken by a request to its
+     * {@link Cpu}, or by the timer once the wall clock has caught up if it is paced.
+     * An unpaced machine with a cycle cap does not idle, it is charged the rest of its
+     * cycles and capped instead.
+     */
+    public static final int IDLE = 2;
+
+    /**
+     * The state of a machine whose program has halted.
+     */
+    public static final int HALTED = 3;
+
+    /**
+     * The state of a machine that has executed its cycle cap.
+     */
+    public static final int CAPPED = 4;
+
+    /**
+     * The state of a machine whose program threw an exception.
+     */
+    public static final int FAILED = 5;
+
+    /**
+     * The {@link Scheduler} that runs the machine.
+     */
+    private final Scheduler scheduler;
+
+    /**
+     * The {@link Cpu} of the machine.
+     */
+    private final Cpu cpu;
+
+    /**
+     * The priority of the machine.
+     */
+    private final int priority;
+
+    /**
+     * The amount of cycles the {@link Cpu} may execute.
+     */
+    private final long cycleCap;
+
+    /**
+     * The {@link Pacer} that the machine runs at, or null if it runs as fast as it can.
+     */
+    private final Pacer pacer;
+
+    /**
+     * The current state of the machine.
+     */
+    private final AtomicInteger state = new AtomicInteger(RUNNABLE);
+
+    /**
+     * The machine should park at the end of its current slice.
+     */
+    private volatile boolean parkRequested;
+
+    /**
+     * The exception that the program threw.
+     */
+    private volatile RuntimeException failure;
+
+    /**
+     * Constructs a new {@link Machine};
+     * @param scheduler The {@link Scheduler} that runs the machine.
+     * @param cpu The {@link Cpu} of the machine.
+     * @param priority The priority of the machine.
+     * @param cycleCap The amount of cycles the {@link Cpu} may execute.
+     * @param pacer The {@link Pacer} to run at, or null to run as fast as possible.
+     */
+    Machine(Scheduler scheduler, Cpu cpu, int priority, long cycleCap, Pacer pacer) {
+        this.scheduler = scheduler;
+        this.cpu = cpu;
+        this.priority = priority;
+        this.cycleCap = cycleCap;
+        this.pacer = pacer;
+        cpu.machine = this;
+    }
+
+    /**
+     * Runs a single slice of the machine and schedules the next one.
+     */
+    @Override
+    public void run() {
+        long budget = cycleCap - cpu.getCycles();
+        if(budget > Scheduler.QUANTUM * priority)
+            budget = Scheduler.QUANTUM * priority;
+        if(pacer != null && budget > pacer.getBurst())
+            budget = pacer.getBurst();
+        if(budget <= 0) {
+            finish(CAPPED);
+            return;
+        }
+        if(pacer != null)
+            /* The schedule of the pacer starts at the first slice. */
+            pacer.getDelay(cpu.getCycles());
+        int reason;
+        try {
+            reason = cpu.run(budget);
+        } catch(RuntimeException ex) {
+            failure = ex;
+            finish(FAILED);
+            return;
+        }
+        if(reason == Cpu.STOP_HALT) {
+            finish(HALTED);
+            return;
+        }
+        if(cpu.getCycles() >= cycleCap) {
+            finish(CAPPED);
+            return;
+        }
+        if(reason == Cpu.STOP_IDLE && pacer == null && cycleCap != Long.MAX_VALUE && !cpu.hasRequests()) {
+            /* Without a request the program would only spin until its cap, and nothing else would wake it. */
+            cpu.charge(cycleCap - cpu.getCycles());
+            finish(CAPPED);
+            return;
+        }
+        if(parkRequested) {
+            state.set(PARKED);
+            /* An unpark between the check and parking would otherwise be lost. */
+            if(parkRequested || !state.compareAndSet(PARKED, RUNNABLE))
+                return;
+        }
+        /* A paced machine that is ahead of the wall clock does not hold a thread. */
+        long delay = pacer == null ? 0L : pacer.getDelay(cpu.getCycles());
+        if(reason == Cpu.STOP_IDLE) {
+            state.set(IDLE);
+            /* A request between the run and idling would otherwise be lost. */
+            if(!cpu.hasRequests() || !state.compareAndSet(IDLE, RUNNABLE)) {
+                if(pacer != null)
+                    scheduler.wake(this, delay);
+                return;
+            }
+        }
+        if(delay > 0)
+            scheduler.schedule(this, delay);
+        else
+            scheduler.schedule(this);
+    }
+
+    /**
+     * Parks the machine at the end of its current slice, a parked machine does not
+     * use a thread until it is unparked.
+     */
+    public void park() {
+        parkRequested = true;
+        cpu.pause();
+    }
+
+    /**
+     * Unparks the machine.
+     */
+    public void unpark() {
+        parkRequested = false;
+        if(state.compareAndSet(PARKED, RUNNABLE))
+            scheduler.schedule(this);
+    }
+
+    /**
+     * Wakes the machine if its program is idle.
+     */
+    void wake() {
+        if(state.compareAndSet(IDLE, RUNNABLE))
+            scheduler.schedule(this);
+    }
+
+    /**
+     * Finishes the machine.
+     * @param finalState The final state of the machine.
+     */
+    private void finish(int finalState) {
+        state.set(finalState);
+        synchronized(this) {
+            notifyAll();
+        }
+        scheduler.finished();
+    }
+
+    /**
+     * Waits until the machine has finished, this will not return while the
+     * machine is parked.
+     * @throws InterruptedException The waiting thread was interrupted.
+     */
+    public synchronized void join() throws InterruptedException {
+        while(!isFinished())
+            wait();
+    }
+
+    /**
+     * Gets if the machine has finished.
+     * @return If the machine has halted, executed its cycle cap or failed.
+     */
+    public boolean isFinished() {
+        return state.get() >= HALTED;
+    }
+
+    /**
+     * Gets the current state of the machine.
+     * @return The state.
+     */
+    public int getState() {
+        return state.get();
+    }
+
+    /**
+     * Gets the exception that the program threw.
+     * @return The exception, or null if the machine has not failed.
+     */
+    public RuntimeException getFailure() {
+        return failure;
+    }
+
+    /**
+     * Gets the {@link Cpu} of the machine, it may only be accessed while the
+     * machine is parked or finished.
+     * @return The {@link Cpu}.
+     */
+    public Cpu getCpu() {
+        return cpu;
+    }
+
+    /**
+     * Gets the priority of the machine.
+     * @return The priority.
+     */
+    public int getPriority() {
+        return priority;
+    }
+}
@@ -1,9 +1,16 @@
 package org.sini;
 
+import java.awt.GraphicsEnvironment;
+import java.io.BufferedWriter;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FileWriter;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.CharBuffer;
 
 /**
  * Main.java
@@ -12,6 +19,11 @@ import java.io.OutputStream;
  */
 public final class Main {
     
+    /**
+     * The amounts of threads that the scheduler is benchmarked with.
+     */
+    private static final int[] BENCHMARK_THREADS = { 1, 2, 4, 8, 16 };
+
     /**
      * Prints the application tag.
      */
@@ -29,6 +41,36 @@ public final class Main {
         + "\n----------------------------------------------------------------------------------");
     }
     
+    /**
+     * Runs a program on many machines at once with the {@link Scheduler}.
+     * @param program The big-endian words of the program.
+     * @param amountMachines The amount of machines to run.
+     * @param cycles The cycle cap of each machine.
+     * @param threads The amount of threads to schedule the machines on.
+     * @return The aggregate amount of cycles executed, in millions per second.
+     * @throws InterruptedException The benchmarking thread was interrupted.
+     */
+    private static long benchmark(CharBuffer program, int amountMachines, long cycles, int threads) throws InterruptedException {
+        Machine[] machines = new Machine[amountMachines];
+        Scheduler scheduler = new Scheduler(threads);
+        long start = System.nanoTime();
+        for(int i = 0; i < amountMachines; i++) {
+            Cpu cpu = new Cpu();
+            cpu.mount(program.duplicate());
+            machines[i] = scheduler.submit(cpu, Scheduler.PRIORITY_NORMAL, cycles);
+        }
+        scheduler.await();
+        long elapsed = System.nanoTime() - start;
+        scheduler.shutdown();
+        long total = 0;
+        for(Machine machine : machines) {
+            if(machine.getState() == Machine.FAILED)
+                throw machine.getFailure();
+            total += machine.getCpu().getCycles();
+        }
+        return total * 1000L / elapsed;
+    }
+
     /**
      * The main entry point for the program.
      * @param args The command line arguments.
@@ -42,14 +84,26 @@ public final class Main {
             argument = argument.substring(1);
             if(argument.equals("c") || argument.equals("compile")) {
                 if(args.length - i < 2)
-                    throw new RuntimeException("Usage: -c <source file> <destination file>...");
+                    throw new RuntimeException("Usage: -c <source file> <destination file> [--o|--optimize] [--s|--symbols]...");
                 InputStream is = null;               
                 try {
                     is = new FileInputStream(args[i++]);
                 } catch(Exception ex) {
                     throw new RuntimeException("Exception thrown while opening source stream: \n\t" + ex);
                 }
+                String source = args[i - 1];
+                String destination = args[i++];
+                boolean optimize = false;
+                boolean symbols = false;
+                while(i < args.length && args[i].startsWith("--"))
+                    if(args[i++].equals("--o") || args[i - 1].equals("--optimize"))
+                        optimize = true;
+                    else if(args[i - 1].equals("--s") || args[i - 1].equals("--symbols"))
+                        symbols = true;
+                    else 
+                        throw new RuntimeException("Expected --o, --optimize, --s or --symbols flag...");
                 Asm asm = new Asm();
+                asm.optimize = optimize;
                 int[] insns = null;
                 try {
                     insns = asm.assemble(is);
@@ -58,7 +112,7 @@ public final class Main {
                 }
                 OutputStream os = null;
                 try {
-                    os = new FileOutputStream(args[i++]);
+                    os = new FileOutputStream(destination);
                     for(int insn : insns) {                     
                         os.write(insn >> 8);
                         os.write(insn);
@@ -68,36 +122,52 @@ public final class Main {
                 } catch(Exception ex) {
                     throw new RuntimeException("Exception thrown while writing the output file: \n\t" + ex);
                 }
-                System.out.println("Compiled " + insns.length + " instructions to " + args[i - 1] + "...");
+                System.out.println("Compiled " + insns.length + " instructions to " + destination + "...");
+                if(symbols) {
+                    File file = Symbols.getFile(new File(destination));
+                    try {
+                        asm.getSymbols(new File(source).getName()).save(file);
+                    } catch(Exception ex) {
+                        throw new RuntimeException("Exception thrown while writing the symbol file: \n\t" + ex);
+                    }
+                    System.out.println("Wrote the symbols to " + file + "...");
+                }
+                if(optimize)
+                    System.out.println("Optimized away " + asm.getWordsSaved() + " words and " + asm.getCyclesSaved() + " cycles...");
             } else if(argument.equals("d") || argument.equals("disasm")) {
                 if(args.length - i < 2)
-                    throw new RuntimeException("Usage: -d <source file> <destination file>...");
-                InputStream is = null;               
+                    throw new RuntimeException("Usage: -d <source file> <destination file> [--r|--recursive]...");
+                CharBuffer program = null;
                 try {
-                    is = new FileInputStream(args[i++]);
+                    program = Loader.load(new File(args[i++]));
                 } catch(Exception ex) {
-                    throw new RuntimeException("Exception thrown while opening source stream: \n\t" + ex);
+                    throw new RuntimeException("Exception thrown while reading the program: \n\t" + ex);
                 }
+                String destination = args[i++];
+                boolean recursive = false;
+                if(i < args.length && args[i].startsWith("--"))
+                    if(args[i++].equals("--r") || args[i - 1].equals("--recursive"))
+                        recursive = true;
+                    else 
+                        throw new RuntimeException("Expected --r or --recursive flag...");
                 Dasm asm = new Dasm();
-                String insns = null;
+                Writer writer = null;
                 try {
-                    insns = asm.disassemble(is);
+                    writer = new BufferedWriter(new FileWriter(destination));
+                    if(recursive)
+                        asm.disassemble(program, new int[] { 0 }, writer);
+                    else
+                        asm.disassemble(program, writer);
+                    writer.flush();
+                    writer.close();
                 } catch(Exception ex) {
                     throw new RuntimeException("Exception thrown while disassembling: \n\t" + ex);
                 }
-                OutputStream os = null;
-                try {
-                    os = new FileOutputStream(args[i++]);
-                    os.write(insns.getBytes());
-                    os.flush();
-                    os.close();
-                } catch(Exception ex) {
-                    throw new RuntimeException("Exception thrown while writing the output file: \n\t" + ex);
-                }
-                System.out.println("Disassembled instructions to " + args[i - 1] + "...");
+                System.out.println("Disassembled instructions to " + destination + "...");
             } else if(argument.equals("e") || argument.equals("execute")) {
                 if(args.length - i < 1)
-                    throw new RuntimeException("Usage: -e <source file>...");
+                    throw new RuntimeException("Usage: -e <source file> [--d|--debug] [--p|--profile] [--k|--keyboard] [--c|--clock <speed>]...");
+                File binary = new File(args[i]);
                 InputStream is = null;               
                 try {
                     is = new FileInputStream(args[i++]);
@@ -105,19 +175,117 @@ public final class Main {
                     throw new RuntimeException("Exception thrown while opening source stream: \n\t" + ex);
                 }
                 boolean debug = false;
-                if(args[i].startsWith("--"))
+                boolean profile = false;
+                boolean keyboard = false;
+                Pacer pacer = null;
+                while(i < args.length && args[i].startsWith("--"))
                     if(args[i++].equals("--d") || args[i - 1].equals("--debug"))
                         debug = true;
-                    else 
-                        throw new RuntimeException("Expected --d or --debug flag...");                 
+                    else if(args[i - 1].equals("--p") || args[i - 1].equals("--profile"))
+                        profile = true;
+                    else if(args[i - 1].equals("--k") || args[i - 1].equals("--keyboard"))
+                        keyboard = true;
+                    else if(args[i - 1].equals("--c") || args[i - 1].equals("--clock")) {
+                        if(i == args.length)
+                            throw new RuntimeException("Expected a speed after " + args[i - 1] + "...");
+                        pacer = new Pacer(Double.parseDouble(args[i++]));
+                    } else 
+                        throw new RuntimeException("Expected --d, --debug, --p, --profile, --k, --keyboard, --c or --clock flag...");                 
                 Cpu cpu = new Cpu();
-                cpu.debug = debug;
+                if(keyboard) {
+                    Keyboard device = new Keyboard(cpu);
+                    if(GraphicsEnvironment.isHeadless())
+                        device.read(System.in);
+                    else
+                        new Display(cpu, device);
+                }
+                File trace = Tracer.getFile(binary);
+                if(debug) {
+                    try {
+                        cpu.tracer = new Tracer(trace);
+                    } catch(Exception ex) {
+                        throw new RuntimeException("Exception thrown while opening the trace file: \n\t" + ex);
+                    }
+                }
+                if(profile)
+                    cpu.profiler = new Profiler();
                 try {
-                    cpu.execute(is);
+                    if(pacer == null)
+                        cpu.execute(is);
+                    else {
+                        cpu.mount(is);
+                        cpu.execute(pacer);
+                    }
+                    if(debug)
+                        cpu.tracer.close();
                 } catch(Exception ex) {
                     throw new RuntimeException("Exception thrown while executing: \n\t" + ex);                    
                 }
-                System.out.println("The program took a total of " + cpu.r[Cpu.C].v + " cycles...");
+                System.out.println("The program took a total of " + cpu.getCycles() + " cycles...");
+                if(debug)
+                    System.out.println("Traced " + cpu.tracer.getRecords() + " instructions to " + trace + "...");
+                if(profile) {
+                    try {
+                        File file = Symbols.getFile(binary);
+                        cpu.profiler.report(System.out, file.exists() ? Symbols.load(file) : null);
+                    } catch(Exception ex) {
+                        throw new RuntimeException("Exception thrown while writing the profile: \n\t" + ex);
+                    }
+                }
+            } else if(argument.equals("t") || argument.equals("trace")) {
+                if(args.length - i < 1)
+                    throw new RuntimeException("Usage: -t <trace file> [--pc <address>[:<address>]] [--op <name>] [--limit <amount>]...");
+                File trace = new File(args[i++]);
+                int from = 0;
+                int to = 0xFFFF;
+                int op = -1;
+                long limit = Long.MAX_VALUE;
+                while(i < args.length && args[i].startsWith("--")) {
+                    String flag = args[i++];
+                    if(i == args.length)
+                        throw new RuntimeException("Expected a value after " + flag + "...");
+                    String value = args[i++];
+                    if(flag.equals("--pc")) {
+                        int separator = value.indexOf(':');
+                        from = Integer.decode(separator < 0 ? value : value.substring(0, separator));
+                        to = separator < 0 ? from : Integer.decode(value.substring(separator + 1));
+                    } else if(flag.equals("--op")) {
+                        for(op = 0; op < Ops.OP_NAMES.length; op++)
+                            if(value.equalsIgnoreCase(Ops.OP_NAMES[op]))
+                                break;
+                        if(op == Ops.OP_NAMES.length)
+                            throw new RuntimeException("Unknown instruction, " + value + "...");
+                    } else if(flag.equals("--limit"))
+                        limit = Long.parseLong(value);
+                    else
+                        throw new RuntimeException("Expected --pc, --op or --limit flag...");
+                }
+                Writer writer = new BufferedWriter(new OutputStreamWriter(System.out));
+                try {
+                    Tracer.decode(trace, writer, from, to, op, limit);
+                    writer.flush();
+                } catch(Exception ex) {
+                    throw new RuntimeException("Exception thrown while decoding the trace: \n\t" + ex);
+                }
+            } else if(argument.equals("b") || argument.equals("benchmark")) {
+                if(args.length - i < 3)
+                    throw new RuntimeException("Usage: -b <source file> <amount of machines> <cycles per machine>...");
+                CharBuffer program = null;
+                try {
+                    program = Loader.load(new File(args[i++]));
+                } catch(Exception ex) {
+                    throw new RuntimeException("Exception thrown while reading the program: \n\t" + ex);
+                }
+                int amountMachines = Integer.parseInt(args[i++]);
+                long cycles = Long.parseLong(args[i++]);
+                for(int threads : BENCHMARK_THREADS) {
+                    try {
+                        System.out.println("Scheduled " + amountMachines + " machines on " + threads + " threads at "
+                                         + benchmark(program, amountMachines, cycles, threads) + " million cycles per second...");
+                    } catch(Exception ex) {
+                        throw new RuntimeException("Exception thrown while benchmarking: \n\t" + ex);
+                    }
+                }
             } else
                 throw new RuntimeException("Unknown command argument: " + argument);
         }
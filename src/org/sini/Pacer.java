@@ -0,0 +1,94 @@
+package org.sini;
+
+/**
+ * Pacer.java
+ * @version 1.0.0
+ * @author RuneTekk Development (SiniSoul)
+ */
+public final class Pacer {
+
+    /**
+     * The nominal clock rate of the DCPU-16 in cycles per second.
+     */
+    public static final long CLOCK_RATE = 100000L;
+
+    /**
+     * The nanoseconds of wall-clock time that a burst of cycles covers, a quarter of
+     * a frame at 60 frames per second.
+     */
+    private static final long BURST_NANOS = 4000000L;
+
+    /**
+     * The nanoseconds that the cycles may fall behind the wall clock before the pacer
+     * stops catching up and restarts the schedule from the current time.
+     */
+    private static final long MAX_LAG_NANOS = 100000000L;
+
+    /**
+     * The nanoseconds of wall-clock time that a cycle takes.
+     */
+    private final double nanosPerCycle;
+
+    /**
+     * The amount of cycles in a burst.
+     */
+    private final long burst;
+
+    /**
+     * The wall-clock time that the schedule starts at.
+     */
+    private long startNanos;
+
+    /**
+     * The amount of cycles that had been executed when the schedule started.
+     */
+    private long startCycles;
+
+    /**
+     * The schedule has been started.
+     */
+    private boolean started;
+
+    /**
+     * Constructs a new {@link Pacer};
+     * @param speed The multiplier of {@link #CLOCK_RATE} to run at.
+     */
+    public Pacer(double speed) {
+        if(!(speed > 0.0) || Double.isInfinite(speed))
+            throw new RuntimeException("Invalid speed: " + speed);
+        nanosPerCycle = 1e9/(CLOCK_RATE * speed);
+        burst = Math.max(1L, (long) (BURST_NANOS/nanosPerCycle));
+    }
+
+    /**
+     * Gets the amount of cycles to run before the next call to
+     * {@link #getDelay(long)}.
+     * @return The amount of cycles in a burst.
+     */
+    public long getBurst() {
+        return burst;
+    }
+
+    /**
+     * Gets the nanoseconds to wait until the wall clock has caught up with the
+     * executed cycles, the schedule starts at the first call. Every delay is measured
+     * from the start of the schedule, so waiting too long is made up by the next
+     * bursts. A schedule that has fallen too far behind is restarted from the current
+     * time instead of racing to catch up.
+     * @param cycles The amount of cycles executed.
+     * @return The nanoseconds to wait, or 0 or less if the cycles are behind.
+     */
+    public long getDelay(long cycles) {
+        long now = System.nanoTime();
+        if(!started) {
+            startNanos = now;
+            startCycles = cycles;
+            started = true;
+            return 0L;
+        }
+        long delay = startNanos + (long) ((cycles - startCycles) * nanosPerCycle) - now;
+        if(delay < -MAX_LAG_NANOS)
+            startNanos -= delay;
+        return delay;
+    }
+}
@@ -0,0 +1,252 @@
+package org.sini;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import static org.sini.Ops.*;
+
+/**
+ * Profiler.java
+ * @version 1.0.0
+ * @author RuneTekk Development (SiniSoul)
+ */
+public final class Profiler {
+
+    /**
+     * The amount of addresses that are listed as hotspots.
+     */
+    private static final int AMOUNT_HOTSPOTS = 20;
+
+    /**
+     * The amount of times the instruction at each address has been executed.
+     */
+    private final long[] executions = new long[Cpu.AMOUNT_MEMORY];
+
+    /**
+     * The amount of cycles charged for the instruction at each address, including
+     * the cycles of skipping the instruction after a condition.
+     */
+    private final long[] cycles = new long[Cpu.AMOUNT_MEMORY];
+
+    /**
+     * The amount of times the condition at each address was true, so that the next
+     * instruction was taken.
+     */
+    private final long[] taken = new long[Cpu.AMOUNT_MEMORY];
+
+    /**
+     * The amount of times the condition at each address was false, so that the next
+     * instruction was skipped.
+     */
+    private final long[] skipped = new long[Cpu.AMOUNT_MEMORY];
+
+    /**
+     * The amount of times each address has been called with JSR.
+     */
+    private final long[] calls = new long[Cpu.AMOUNT_MEMORY];
+
+    /**
+     * Counts an executed instruction.
+     * @param pc The address of the instruction.
+     * @param insn The decoded instruction.
+     * @param next The address after the instruction.
+     * @param target The address of the next instruction to execute.
+     */
+    void count(int pc, long insn, int next, int target) {
+        int op = (int) insn & 0xFFFF;
+        long charged = (int) (insn >>> 50 & 0xF);
+        executions[pc]++;
+        if((op & 0xF) >= OP_IFE) {
+            if(target == next)
+                taken[pc]++;
+            else {
+                skipped[pc]++;
+                charged += target - next & 0xFFFF;
+            }
+        } else if((op & 0xF) == 0 && (op >>> 4 & 0x3F) == OP_JSR)
+            calls[target]++;
+        cycles[pc] += charged;
+    }
+
+    /**
+     * Clears every count.
+     */
+    public void reset() {
+        Arrays.fill(executions, 0L);
+        Arrays.fill(cycles, 0L);
+        Arrays.fill(taken, 0L);
+        Arrays.fill(skipped, 0L);
+        Arrays.fill(calls, 0L);
+    }
+
+    /**
+     * Gets the amount of times the instruction at an address has been executed.
+     * @param address The address of the instruction.
+     * @return The amount of executions.
+     */
+    public long getExecutions(int address) {
+        return executions[address & 0xFFFF];
+    }
+
+    /**
+     * Gets the amount of cycles charged for the instruction at an address.
+     * @param address The address of the instruction.
+     * @return The amount of cycles.
+     */
+    public long getCycles(int address) {
+        return cycles[address & 0xFFFF];
+    }
+
+    /**
+     * Writes the hotspot report, the addresses that took the most cycles, the
+     * taken and skipped counts of the conditions and the cycles folded into each
+     * called function and, when symbols are given, into each label.
+     * @param out The {@link Appendable} to write the report to.
+     * @param symbols The {@link Symbols} of the program, or null if there are none.
+     * @throws IOException An exception thrown by the {@link Appendable}.
+     */
+    public void report(Appendable out, Symbols symbols) throws IOException {
+        long totalExecutions = 0L;
+        long totalCycles = 0L;
+        int amountExecuted = 0;
+        for(int i = 0; i < Cpu.AMOUNT_MEMORY; i++) {
+            if(executions[i] == 0)
+                continue;
+            totalExecutions += executions[i];
+            totalCycles += cycles[i];
+            amountExecuted++;
+        }
+        out.append("Profiled " + totalExecutions + " instructions taking " + totalCycles + " cycles at " + amountExecuted + " addresses\n");
+        Integer[] addresses = new Integer[amountExecuted];
+        for(int i = 0, j = 0; i < Cpu.AMOUNT_MEMORY; i++) {
+            if(executions[i] != 0)
+                addresses[j++] = i;
+        }
+        Arrays.sort(addresses, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return cycles[a] != cycles[b] ? (cycles[a] < cycles[b] ? 1 : -1) : a - b;
+            }
+        });
+        out.append("\nHotspots:\n");
+        appendRow(out, "cycles", "%", "executions", "address");
+        for(int i = 0; i < amountExecuted && i < AMOUNT_HOTSPOTS; i++) {
+            int address = addresses[i];
+            appendRow(out, Long.toString(cycles[address]), getPercent(cycles[address], totalCycles),
+                      Long.toString(executions[address]), getLocation(address, symbols));
+        }
+        out.append("\nConditions:\n");
+        appendRow(out, "taken", "%", "skipped", "address");
+        for(int i = 0; i < amountExecuted; i++) {
+            int address = addresses[i];
+            if(taken[address] == 0 && skipped[address] == 0)
+                continue;
+            appendRow(out, Long.toString(taken[address]), getPercent(taken[address], taken[address] + skipped[address]),
+                      Long.toString(skipped[address]), getLocation(address, symbols));
+        }
+        NavigableMap<Integer, String> functions = new TreeMap<Integer, String>();
+        for(int i = 0; i < Cpu.AMOUNT_MEMORY; i++) {
+            if(calls[i] != 0)
+                functions.put(i, getLocation(i, symbols));
+        }
+        if(symbols != null && !symbols.getLabels().isEmpty())
+            appendFolded(out, "Labels", symbols.getLabels(), totalCycles);
+        if(!functions.isEmpty())
+            appendFolded(out, "Functions", functions, totalCycles);
+    }
+
+    /**
+     * Writes the cycles and executions folded into the nearest symbol before each
+     * address, the addresses before the first symbol are not folded.
+     * @param out The {@link Appendable} to write to.
+     * @param title The title of the table.
+     * @param symbols The names of the symbols by address.
+     * @param totalCycles The total amount of cycles.
+     * @throws IOException An exception thrown by the {@link Appendable}.
+     */
+    private void appendFolded(Appendable out, String title, NavigableMap<Integer, String> symbols, long totalCycles) throws IOException {
+        int amountSymbols = symbols.size();
+        int[] starts = new int[amountSymbols];
+        String[] names = new String[amountSymbols];
+        final long[] foldedCycles = new long[amountSymbols];
+        long[] foldedExecutions = new long[amountSymbols];
+        int index = 0;
+        for(Map.Entry<Integer, String> symbol : symbols.entrySet()) {
+            starts[index] = symbol.getKey();
+            names[index++] = symbol.getValue();
+        }
+        for(int i = 0; i < amountSymbols; i++) {
+            int end = i + 1 < amountSymbols ? starts[i + 1] : Cpu.AMOUNT_MEMORY;
+            for(int address = starts[i]; address < end; address++) {
+                foldedCycles[i] += cycles[address];
+                foldedExecutions[i] += executions[address];
+            }
+        }
+        Integer[] order = new Integer[amountSymbols];
+        for(int i = 0; i < amountSymbols; i++)
+            order[i] = i;
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return foldedCycles[a] != foldedCycles[b] ? (foldedCycles[a] < foldedCycles[b] ? 1 : -1) : a - b;
+            }
+        });
+        out.append("\n" + title + ":\n");
+        appendRow(out, "cycles", "%", "executions", "name");
+        for(int i : order) {
+            if(foldedExecutions[i] == 0)
+                break;
+            String name = names[i];
+            if(starts[i] < Cpu.AMOUNT_MEMORY && calls[starts[i]] != 0)
+                name += " (" + calls[starts[i]] + " calls)";
+            appendRow(out, Long.toString(foldedCycles[i]), getPercent(foldedCycles[i], totalCycles),
+                      Long.toString(foldedExecutions[i]), name);
+        }
+    }
+
+    /**
+     * Writes a row of a table of the report.
+     * @param out The {@link Appendable} to write to.
+     * @param count The first count of the row.
+     * @param percent The percent of the first count.
+     * @param other The second count of the row.
+     * @param name The name of the row.
+     * @throws IOException An exception thrown by the {@link Appendable}.
+     */
+    private static void appendRow(Appendable out, String count, String percent, String other, String name) throws IOException {
+        out.append(String.format("%16s %7s %16s  %s\n", count, percent, other, name));
+    }
+
+    /**
+     * Gets a count as a percent of a total.
+     * @param count The count.
+     * @param total The total.
+     * @return The percent with two decimals.
+     */
+    private static String getPercent(long count, long total) {
+        return total == 0 ? "-" : String.format("%.2f", count * 100.0/total);
+    }
+
+    /**
+     * Gets the location of an address, which is the nearest label before it and the
+     * offset from the label and the source line when there are symbols.
+     * @param address The address.
+     * @param symbols The {@link Symbols} of the program, or null if there are none.
+     * @return The location.
+     */
+    private static String getLocation(int address, Symbols symbols) {
+        String location = String.format("0x%04x", address);
+        if(symbols == null)
+            return location;
+        Map.Entry<Integer, String> label = symbols.getLabels().floorEntry(address);
+        if(label != null) {
+            int offset = address - label.getKey();
+            location += " " + label.getValue() + (offset == 0 ? "" : "+" + offset);
+        }
+        String line = symbols.getLocation(address);
+        return line == null ? location : location + " (" + line + ")";
+    }
+}
@@ -0,0 +1,190 @@
+package org.sini;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scheduler.java
+ * @version 1.0.0
+ * @author RuneTekk Development (SiniSoul)
+ */
+public final class Scheduler {
+
+    /**
+     * The priority of a {@link Machine} that gets a single quantum per slice.
+     */
+    public static final int PRIORITY_LOW = 1;
+
+    /**
+     * The priority of a {@link Machine} that gets two quanta per slice.
+     */
+    public static final int PRIORITY_NORMAL = 2;
+
+    /**
+     * The priority of a {@link Machine} that gets four quanta per slice.
+     */
+    public static final int PRIORITY_HIGH = 4;
+
+    /**
+     * The amount of cycles in a quantum, a {@link Machine} runs for its priority
+     * times this amount of cycles before it yields its thread.
+     */
+    static final long QUANTUM = 10000;
+
+    /**
+     * The pool that the slices of the machines are executed on.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * The timer that schedules the slices of paced machines once the wall clock has
+     * caught up with them, or null until a slice has been delayed.
+     */
+    private ScheduledThreadPoolExecutor timer;
+
+    /**
+     * The amount of machines that have been submitted and have not finished.
+     */
+    private int amountRunning;
+
+    /**
+     * Constructs a new {@link Scheduler};
+     * @param threads The amount of threads to run the machines on.
+     */
+    public Scheduler(int threads) {
+        /* Slices forked by a worker are taken in submission order so that the machines
+         * on a worker are run round robin, idle workers steal from the others. */
+        pool = new ForkJoinPool(threads, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+    }
+
+    /**
+     * Submits a {@link Cpu} with a mounted program to be run until it halts or
+     * has executed the cycle cap.
+     * @param cpu The {@link Cpu} to run.
+     * @param priority The priority of the machine.
+     * @param cycleCap The amount of cycles the {@link Cpu} may execute, or
+     *                 {@link Long#MAX_VALUE} for no cap.
+     * @return The submitted machine.
+     */
+    public Machine submit(Cpu cpu, int priority, long cycleCap) {
+        return submit(cpu, priority, cycleCap, null);
+    }
+
+    /**
+     * Submits a {@link Cpu} with a mounted program to be run at the pace of a
+     * {@link Pacer} until it halts or has executed the cycle cap. A machine that is
+     * ahead of the wall clock is scheduled again by a timer instead of waiting on a
+     * thread, so many paced machines share the threads.
+     * @param cpu The {@link Cpu} to run.
+     * @param priority The priority of the machine.
+     * @param cycleCap The amount of cycles the {@link Cpu} may execute, or
+     *                 {@link Long#MAX_VALUE} for no cap.
+     * @param pacer The {@link Pacer} to run at, or null to run as fast as possible.
+     * @return The submitted machine.
+     */
+    public Machine submit(Cpu cpu, int priority, long cycleCap, Pacer pacer) {
+        if(priority < PRIORITY_LOW)
+            throw new RuntimeException("Invalid priority: " + priority);
+        Machine machine = new Machine(this, cpu, priority, cycleCap, pacer);
+        synchronized(this) {
+            amountRunning++;
+        }
+        schedule(machine);
+        return machine;
+    }
+
+    /**
+     * Schedules the next slice of a machine.
+     * @param machine The machine to schedule.
+     */
+    void schedule(Machine machine) {
+        pool.execute(machine);
+    }
+
+    /**
+     * Schedules the next slice of a machine after a delay.
+     * @param machine The machine to schedule.
+     * @param nanos The nanoseconds to delay the slice for.
+     */
+    void schedule(final Machine machine, long nanos) {
+        getTimer().schedule(new Runnable() {
+            @Override
+            public void run() {
+                pool.execute(machine);
+            }
+        }, nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Wakes an idle machine after a delay, unless it has been woken before.
+     * @param machine The machine to wake.
+     * @param nanos The nanoseconds to delay the wake for.
+     */
+    void wake(final Machine machine, long nanos) {
+        getTimer().schedule(new Runnable() {
+            @Override
+            public void run() {
+                machine.wake();
+            }
+        }, nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Gets the timer, creating it with a daemon thread the first time.
+     * @return The timer.
+     */
+    private synchronized ScheduledThreadPoolExecutor getTimer() {
+        if(timer == null) {
+            timer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "Scheduler timer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            timer.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        }
+        return timer;
+    }
+
+    /**
+     * Called when a machine has finished.
+     */
+    synchronized void finished() {
+        if(--amountRunning == 0)
+            notifyAll();
+    }
+
+    /**
+     * Gets the amount of machines that have not finished, parked machines included.
+     * @return The amount of machines.
+     */
+    public synchronized int getAmountRunning() {
+        return amountRunning;
+    }
+
+    /**
+     * Waits until every submitted machine has finished, this will not return while
+     * a machine is parked.
+     * @throws InterruptedException The waiting thread was interrupted.
+     */
+    public synchronized void await() throws InterruptedException {
+        while(amountRunning > 0)
+            wait();
+    }
+
+    /**
+     * Shuts down the threads of the {@link Scheduler}, slices that were already
+     * scheduled are still run but delayed slices are dropped.
+     */
+    public void shutdown() {
+        synchronized(this) {
+            if(timer != null)
+                timer.shutdown();
+        }
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,223 @@
+package org.sini;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+
+/**
+ * Screen.java
+ * @version 1.0.0
+ * @author RuneTekk Development (SiniSoul)
+ */
+final class Screen {
+
+    /**
+     * The title of the display.
+     */
+    private static final String DISPLAY_TITLE = "jDCPU-16";
+
+    /**
+     * The ratio of pixels for the width to the amount of pixels on the display.
+     */
+    private final static int WIDTH_RATIO = 14;
+
+    /**
+     * The ratio of pixels for the height to the amount of pixels on the display.
+     */
+    private final static int HEIGHT_RATIO = 25;
+
+    /**
+     * The amount of pixels in the displays width.
+     */
+    private final static int DISPLAY_WIDTH = 32;
+
+    /**
+     * The amount of pixels in the displays height.
+     */
+    private final static int DISPLAY_HEIGHT = 16;
+
+    /**
+     * The height of the title bar under the cells.
+     */
+    private final static int TITLE_HEIGHT = 60;
+
+    /**
+     * The width of the screen.
+     */
+    final static int WIDTH = DISPLAY_WIDTH * WIDTH_RATIO;
+
+    /**
+     * The height of the screen.
+     */
+    final static int HEIGHT = DISPLAY_HEIGHT * HEIGHT_RATIO + TITLE_HEIGHT;
+
+    /**
+     * The amount of glyphs in the glyph atlas.
+     */
+    private final static int AMOUNT_GLYPHS = 256;
+
+    /**
+     * The width of the glyph atlas, which holds every glyph side by side.
+     */
+    private final static int ATLAS_WIDTH = AMOUNT_GLYPHS * WIDTH_RATIO;
+
+    /**
+     * The colours of the palette, a colour has red if bit 2 is set, green if bit 1 is
+     * set and blue if bit 0 is set.
+     */
+    private final static int[] PALETTE = new int[16];
+
+    /**
+     * The coverage of each pixel of the glyph atlas, from 0 to 255.
+     */
+    private final static byte[] GLYPHS = createGlyphs();
+
+    /**
+     * The {@link Cpu} whose video memory is drawn.
+     */
+    private final Cpu cpu;
+
+    /**
+     * The image that the cells are drawn to, cells are only redrawn once their
+     * word of video memory has changed.
+     */
+    private final BufferedImage image;
+
+    /**
+     * The pixels of the image.
+     */
+    private final int[] pixels;
+
+    /**
+     * The words of video memory that the cells of the image were drawn from.
+     */
+    private final char[] drawn = new char[Cpu.AMOUNT_VIDEO_WORDS];
+
+    static {
+        for(int i = 0; i < PALETTE.length; i++)
+            PALETTE[i] = ((i & 0x4) != 0 ? 0xFF0000 : 0) | ((i & 0x2) != 0 ? 0xFF00 : 0) | ((i & 0x1) != 0 ? 0xFF : 0);
+    }
+
+    /**
+     * Creates the glyph atlas by drawing every glyph with the console font once.
+     * @return The coverage of each pixel of the atlas.
+     */
+    private static byte[] createGlyphs() {
+        BufferedImage atlas = new BufferedImage(ATLAS_WIDTH, HEIGHT_RATIO, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D graphics = atlas.createGraphics();
+        graphics.setFont(new Font("MonteCarlo", Font.PLAIN, 18));
+        graphics.setColor(Color.WHITE);
+        FontMetrics metrics = graphics.getFontMetrics();
+        for(int i = 0; i < AMOUNT_GLYPHS; i++) {
+            String c = "" + (char) i;
+            graphics.setClip(i * WIDTH_RATIO, 0, WIDTH_RATIO, HEIGHT_RATIO);
+            graphics.drawString(c, i * WIDTH_RATIO + (WIDTH_RATIO/2 - metrics.stringWidth(c)/2), HEIGHT_RATIO - 5);
+        }
+        graphics.dispose();
+        return ((DataBufferByte) atlas.getRaster().getDataBuffer()).getData();
+    }
+
+    /**
+     * Blends a foreground colour over a background colour.
+     * @param background The background colour.
+     * @param foreground The foreground colour.
+     * @param alpha The coverage of the foreground, from 0 to 255.
+     * @return The blended colour.
+     */
+    private static int blend(int background, int foreground, int alpha) {
+        if(alpha == 0)
+            return background;
+        if(alpha == 0xFF)
+            return foreground;
+        int colour = 0;
+        for(int shift = 0; shift < 24; shift += 8) {
+            int b = background >>> shift & 0xFF;
+            int f = foreground >>> shift & 0xFF;
+            colour |= (b + (f - b) * alpha / 0xFF) << shift;
+        }
+        return colour;
+    }
+
+    /**
+     * Constructs a new {@link Screen}; the screen does not need a display, so it
+     * can be drawn off-screen.
+     * @param cpu The {@link Cpu} whose video memory is drawn.
+     */
+    Screen(Cpu cpu) {
+        this.cpu = cpu;
+        image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        drawTitle();
+    }
+
+    /**
+     * Redraws the changed cells and draws the screen.
+     * @param graphics The graphics to draw the screen with.
+     * @param x The x coordinate to draw the screen at.
+     * @param y The y coordinate to draw the screen at.
+     */
+    void paint(Graphics graphics, int x, int y) {
+        render();
+        graphics.drawImage(image, x, y, null);
+    }
+
+    /**
+     * Requests that the {@link Cpu} publishes its next frame, called at the refresh
+     * rate of the display.
+     * @return If a frame has been published since the screen was last drawn.
+     */
+    boolean refresh() {
+        boolean fresh = cpu.frames.isFresh();
+        cpu.requestFrame();
+        return fresh;
+    }
+
+    /**
+     * Redraws the cells whose words have changed in the latest frame published by the
+     * {@link Cpu}. The frame is taken without a lock, so drawing never stalls the
+     * {@link Cpu}.
+     */
+    private synchronized void render() {
+        char[] frame = cpu.frames.take();
+        for(int cell = 0; cell < Cpu.AMOUNT_VIDEO_WORDS; cell++) {
+            if(frame[cell] != drawn[cell]) {
+                drawn[cell] = frame[cell];
+                drawCell(cell, frame[cell]);
+            }
+        }
+    }
+
+    /**
+     * Draws a cell to the image from the glyph atlas.
+     * @param cell The index of the cell.
+     * @param value The word of video memory of the cell.
+     */
+    private void drawCell(int cell, int value) {
+        int background = PALETTE[value >>> 12 & 0xF];
+        int foreground = PALETTE[value >>> 8 & 0xF];
+        int glyph = (value & 0xFF) * WIDTH_RATIO;
+        int offset = cell / DISPLAY_WIDTH * HEIGHT_RATIO * WIDTH + cell % DISPLAY_WIDTH * WIDTH_RATIO;
+        for(int y = 0; y < HEIGHT_RATIO; y++) {
+            for(int x = 0; x < WIDTH_RATIO; x++)
+                pixels[offset + x] = blend(background, foreground, GLYPHS[y * ATLAS_WIDTH + glyph + x] & 0xFF);
+            offset += WIDTH;
+        }
+    }
+
+    /**
+     * Draws the title bar under the cells to the image.
+     */
+    private void drawTitle() {
+        Graphics graphics = image.getGraphics();
+        graphics.setColor(Color.WHITE);
+        graphics.fillRect(0, HEIGHT - TITLE_HEIGHT, WIDTH, 1);
+        graphics.setFont(new Font("Ariel", Font.BOLD, 14));
+        graphics.drawString(DISPLAY_TITLE, WIDTH/2 - graphics.getFontMetrics().stringWidth(DISPLAY_TITLE)/2, HEIGHT - TITLE_HEIGHT + graphics.getFontMetrics().getHeight());
+        graphics.dispose();
+    }
+}
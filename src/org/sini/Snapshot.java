@@ -0,0 +1,61 @@
+package org.sini;
+
+/**
+ * Snapshot.java
+ * @version 1.0.0
+ * @author RuneTekk Development (SiniSoul)
+ */
+public final class Snapshot {
+
+    /**
+     * The pages of memory, which are never written once they are in a snapshot.
+     */
+    final char[][] pages;
+
+    /**
+     * The registers.
+     */
+    final char[] registers;
+
+    /**
+     * The amount of cycles that had been executed.
+     */
+    final long cycles;
+
+    /**
+     * The program had halted.
+     */
+    final boolean halted;
+
+    /**
+     * Constructs a new {@link Snapshot};
+     * @param pages The pages of memory.
+     * @param registers The registers.
+     * @param cycles The amount of cycles that had been executed.
+     * @param halted The program had halted.
+     */
+    Snapshot(char[][] pages, char[] registers, long cycles, boolean halted) {
+        this.pages = pages;
+        this.registers = registers;
+        this.cycles = cycles;
+        this.halted = halted;
+    }
+
+    /**
+     * Creates a new {@link Cpu} in the state of this snapshot.
+     * @return The new {@link Cpu}.
+     */
+    public Cpu fork() {
+        Cpu cpu = new Cpu();
+        cpu.restore(this);
+        return cpu;
+    }
+
+    /**
+     * Gets the amount of cycles that had been executed when the snapshot was taken.
+     * @return The amount of cycles.
+     */
+    public long getCycles() {
+        return cycles;
+    }
+}
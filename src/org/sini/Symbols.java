@@ -0,0 +1,250 @@
+package org.sini;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Symbols.java
+ * @version 1.0.0
+ * @author RuneTekk Development (SiniSoul)
+ */
+public final class Symbols {
+
+    /**
+     * The magic number that a symbol file starts with, "DSYM".
+     */
+    private static final int MAGIC = 0x4453594D;
+
+    /**
+     * The version of the symbol file format.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * The extension of a symbol file, which replaces the extension of its binary.
+     */
+    private static final String EXTENSION = ".sym";
+
+    /**
+     * The name of the source file that was assembled.
+     */
+    private final String source;
+
+    /**
+     * The amount of words of the assembled program.
+     */
+    private final int amountWords;
+
+    /**
+     * The addresses that each run of words from the same source line starts at, in order.
+     */
+    private final int[] runAddresses;
+
+    /**
+     * The source lines of the runs, indexed by run.
+     */
+    private final int[] runLines;
+
+    /**
+     * The names of the labels, keyed by their addresses. Only the first label defined
+     * at an address is kept.
+     */
+    private final NavigableMap<Integer, String> labels;
+
+    /**
+     * Constructs a new {@link Symbols};
+     * @param source The name of the source file that was assembled.
+     * @param amountWords The amount of words of the assembled program.
+     * @param runAddresses The addresses that each run of words starts at.
+     * @param runLines The source lines of the runs.
+     * @param labels The names of the labels, keyed by their addresses.
+     */
+    private Symbols(String source, int amountWords, int[] runAddresses, int[] runLines, NavigableMap<Integer, String> labels) {
+        this.source = source;
+        this.amountWords = amountWords;
+        this.runAddresses = runAddresses;
+        this.runLines = runLines;
+        this.labels = labels;
+    }
+
+    /**
+     * Creates the symbols of an assembled program.
+     * @param source The name of the source file that was assembled.
+     * @param lines The source line of each word of the program.
+     * @param labels The names of the labels, keyed by their addresses.
+     * @return The symbols.
+     */
+    static Symbols create(String source, int[] lines, NavigableMap<Integer, String> labels) {
+        int amountRuns = 0;
+        for(int i = 0; i < lines.length; i++)
+            if(i == 0 || lines[i] != lines[i - 1])
+                amountRuns++;
+        int[] runAddresses = new int[amountRuns];
+        int[] runLines = new int[amountRuns];
+        for(int i = 0, run = 0; i < lines.length; i++) {
+            if(i == 0 || lines[i] != lines[i - 1]) {
+                runAddresses[run] = i;
+                runLines[run++] = lines[i];
+            }
+        }
+        return new Symbols(source, lines.length, runAddresses, runLines, labels);
+    }
+
+    /**
+     * Gets the file of the symbols of a binary, the binary with its extension
+     * replaced by .sym.
+     * @param binary The file of the binary.
+     * @return The file of the symbols.
+     */
+    public static File getFile(File binary) {
+        String name = binary.getName();
+        int extension = name.lastIndexOf('.');
+        if(extension > 0)
+            name = name.substring(0, extension);
+        return new File(binary.getParentFile(), name + EXTENSION);
+    }
+
+    /**
+     * Loads symbols from a file.
+     * @param file The symbol file.
+     * @return The symbols.
+     * @throws IOException An I/O exception was thrown while reading, or the file is invalid.
+     */
+    public static Symbols load(File file) throws IOException {
+        InputStream is = new FileInputStream(file);
+        try {
+            return read(is);
+        } finally {
+            is.close();
+        }
+    }
+
+    /**
+     * Reads symbols from a stream. The file holds the header, the runs of words from
+     * the same source line and then the labels, each table prefixed by its length.
+     * @param is The {@link InputStream} to read from.
+     * @return The symbols.
+     * @throws IOException An I/O exception was thrown while reading, or the file is invalid.
+     */
+    public static Symbols read(InputStream is) throws IOException {
+        DataInputStream dis = new DataInputStream(new BufferedInputStream(is));
+        if(dis.readInt() != MAGIC)
+            throw new IOException("The file does not hold symbols...");
+        if(dis.readUnsignedShort() != VERSION)
+            throw new IOException("The symbols are of an unknown version...");
+        String source = dis.readUTF();
+        int amountWords = dis.readInt();
+        int amountRuns = dis.readInt();
+        if(amountWords > Cpu.AMOUNT_MEMORY || amountRuns > amountWords)
+            throw new IOException("The symbols are larger than the memory...");
+        int[] runAddresses = new int[amountRuns];
+        int[] runLines = new int[amountRuns];
+        for(int i = 0; i < amountRuns; i++) {
+            runAddresses[i] = dis.readUnsignedShort();
+            runLines[i] = dis.readInt();
+        }
+        int amountLabels = dis.readInt();
+        NavigableMap<Integer, String> labels = new TreeMap<Integer, String>();
+        for(int i = 0; i < amountLabels; i++) {
+            int address = dis.readInt();
+            labels.put(address, dis.readUTF());
+        }
+        return new Symbols(source, amountWords, runAddresses, runLines, labels);
+    }
+
+    /**
+     * Saves the symbols to a file.
+     * @param file The symbol file.
+     * @throws IOException An I/O exception was thrown while writing.
+     */
+    public void save(File file) throws IOException {
+        OutputStream os = new FileOutputStream(file);
+        try {
+            write(os);
+        } finally {
+            os.close();
+        }
+    }
+
+    /**
+     * Writes the symbols to a stream.
+     * @param os The {@link OutputStream} to write to.
+     * @throws IOException An I/O exception was thrown while writing.
+     */
+    public void write(OutputStream os) throws IOException {
+        DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(os));
+        dos.writeInt(MAGIC);
+        dos.writeShort(VERSION);
+        dos.writeUTF(source);
+        dos.writeInt(amountWords);
+        dos.writeInt(runAddresses.length);
+        for(int i = 0; i < runAddresses.length; i++) {
+            dos.writeShort(runAddresses[i]);
+            dos.writeInt(runLines[i]);
+        }
+        dos.writeInt(labels.size());
+        for(Map.Entry<Integer, String> label : labels.entrySet()) {
+            dos.writeInt(label.getKey());
+            dos.writeUTF(label.getValue());
+        }
+        dos.flush();
+    }
+
+    /**
+     * Gets the name of the source file that was assembled.
+     * @return The name of the source file.
+     */
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * Gets the source line that a word was assembled from.
+     * @param address The address of the word.
+     * @return The line, or -1 if the address is outside of the program.
+     */
+    public int getLine(int address) {
+        if(address < 0 || address >= amountWords)
+            return -1;
+        int low = 0;
+        int high = runAddresses.length - 1;
+        while(low < high) {
+            int middle = low + high + 1 >>> 1;
+            if(runAddresses[middle] <= address)
+                low = middle;
+            else
+                high = middle - 1;
+        }
+        return runLines[low];
+    }
+
+    /**
+     * Gets the source file and line that a word was assembled from.
+     * @param address The address of the word.
+     * @return The file and line, separated by a colon, or null if the address is
+     *         outside of the program.
+     */
+    public String getLocation(int address) {
+        int line = getLine(address);
+        return line < 0 ? null : source + ":" + line;
+    }
+
+    /**
+     * Gets the names of the labels, which must not be modified.
+     * @return The names of the labels, keyed by their addresses.
+     */
+    public NavigableMap<Integer, String> getLabels() {
+        return labels;
+    }
+}
@@ -0,0 +1,321 @@
+package org.sini;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Tracer.java
+ * @version 1.0.0
+ * @author RuneTekk Development (SiniSoul)
+ */
+public final class Tracer implements Runnable {
+
+    /**
+     * The magic number that a trace file starts with, "DTRC".
+     */
+    static final int MAGIC = 0x44545243;
+
+    /**
+     * The version of the trace file format.
+     */
+    static final int VERSION = 1;
+
+    /**
+     * The length of the header of a trace file, the magic number, the version and
+     * the size of a record.
+     */
+    static final int HEADER_SIZE = 8;
+
+    /**
+     * The size of a record, the program counter, the instruction word, the values of
+     * a and b, O after the instruction and the cycles charged, each a little-endian
+     * word so that a record is written in the native order of most machines.
+     */
+    static final int RECORD_SIZE = 12;
+
+    /**
+     * The amount of records that the ring buffer holds, a power of two.
+     */
+    private static final int AMOUNT_RECORDS = 1 << 20;
+
+    /**
+     * The amount of records that are written before they are published to the
+     * draining thread, a power of two.
+     */
+    private static final int PUBLISH_INTERVAL = 1 << 8;
+
+    /**
+     * The amount of records that are written between wakes of the draining thread, a
+     * quarter of the ring buffer so that it is drained long before it fills.
+     */
+    private static final int DRAIN_INTERVAL = AMOUNT_RECORDS >>> 2;
+
+    /**
+     * The nanoseconds that the tracing thread parks for while the ring buffer is full.
+     */
+    private static final long PARK_NANOS = 50000L;
+
+    /**
+     * The nanoseconds that the draining thread parks for while there are no records,
+     * unless it is woken earlier, so that the records of a slow program still reach
+     * the file.
+     */
+    private static final long DRAIN_NANOS = 100000000L;
+
+    /**
+     * The extension of a trace file, which replaces the extension of its binary.
+     */
+    private static final String EXTENSION = ".trace";
+
+    /**
+     * The ring buffer of records, outside of the heap so that it can be written to
+     * the channel without being copied.
+     */
+    private final ByteBuffer ring = ByteBuffer.allocateDirect(AMOUNT_RECORDS * RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * The channel of the trace file.
+     */
+    private final FileChannel channel;
+
+    /**
+     * The thread that drains the ring buffer to the channel.
+     */
+    private final Thread thread;
+
+    /**
+     * The amount of records that have been published to the draining thread.
+     */
+    private final AtomicLong published = new AtomicLong();
+
+    /**
+     * The amount of records that have been drained to the channel.
+     */
+    private final AtomicLong drained = new AtomicLong();
+
+    /**
+     * The amount of records written, only used by the tracing thread.
+     */
+    private long head;
+
+    /**
+     * The amount of records that can be written before the ring buffer has to be
+     * drained, only used by the tracing thread.
+     */
+    private long limit = AMOUNT_RECORDS;
+
+    /**
+     * The amount of records written at which the draining thread is woken next, only
+     * used by the tracing thread.
+     */
+    private long wakeAt = DRAIN_INTERVAL;
+
+    /**
+     * The tracer has been closed.
+     */
+    private volatile boolean closed;
+
+    /**
+     * The exception thrown while draining, or null if there has been none.
+     */
+    private volatile IOException failure;
+
+    /**
+     * Constructs a new {@link Tracer}; the file is truncated and the draining thread
+     * is started.
+     * @param file The file to write the trace to.
+     * @throws IOException An I/O exception was thrown while opening the file.
+     */
+    public Tracer(File file) throws IOException {
+        channel = new FileOutputStream(file).getChannel();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putShort((short) VERSION).putShort((short) RECORD_SIZE).flip();
+        while(header.hasRemaining())
+            channel.write(header);
+        thread = new Thread(this, "Tracer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Gets the file of the trace of a binary, the binary with its extension
+     * replaced by .trace.
+     * @param binary The file of the binary.
+     * @return The file of the trace.
+     */
+    public static File getFile(File binary) {
+        String name = binary.getName();
+        int extension = name.lastIndexOf('.');
+        if(extension > 0)
+            name = name.substring(0, extension);
+        return new File(binary.getParentFile(), name + EXTENSION);
+    }
+
+    /**
+     * Writes a record of an executed instruction to the ring buffer, waiting for the
+     * draining thread if the ring buffer is full. Only a single thread may trace at
+     * a time.
+     * @param pc The address of the instruction.
+     * @param op The instruction word.
+     * @param a The value of a before the instruction.
+     * @param b The value of b.
+     * @param o The value of O after the instruction.
+     * @param cycles The cycles charged for the instruction.
+     */
+    void record(int pc, int op, int a, int b, int o, int cycles) {
+        if(head == limit)
+            await();
+        int index = ((int) head & AMOUNT_RECORDS - 1) * RECORD_SIZE;
+        ring.putLong(index, (long) b << 48 | (long) a << 32 | (long) op << 16 | pc);
+        ring.putInt(index + 8, cycles << 16 | o);
+        if((++head & PUBLISH_INTERVAL - 1) == 0) {
+            published.lazySet(head);
+            if(head >= wakeAt) {
+                wakeAt = head + DRAIN_INTERVAL;
+                LockSupport.unpark(thread);
+            }
+        }
+    }
+
+    /**
+     * Publishes the written records and waits until the ring buffer has room for
+     * another record.
+     */
+    private void await() {
+        published.set(head);
+        while(true) {
+            if(failure != null)
+                throw new RuntimeException("Exception thrown while draining the trace: \n\t" + failure);
+            limit = drained.get() + AMOUNT_RECORDS;
+            if(head < limit)
+                return;
+            LockSupport.unpark(thread);
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+    }
+
+    /**
+     * Publishes the written records to the draining thread, so that they reach the
+     * file without waiting for the ring buffer to fill.
+     */
+    public void flush() {
+        published.set(head);
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * Drains every written record to the file, stops the draining thread and closes
+     * the file.
+     * @throws IOException An I/O exception was thrown while draining or closing.
+     */
+    public void close() throws IOException {
+        published.set(head);
+        closed = true;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+        if(failure != null)
+            throw failure;
+    }
+
+    /**
+     * Decodes a trace file into a line for each record that passes the filters.
+     * @param file The trace file.
+     * @param out The {@link Appendable} to write the lines to.
+     * @param from The lowest address of the instructions to decode.
+     * @param to The highest address of the instructions to decode.
+     * @param op The index in {@link Ops#OP_NAMES} of the instructions to decode, or -1
+     *           to decode every instruction.
+     * @param limit The maximum amount of lines to decode.
+     * @return The amount of lines decoded.
+     * @throws IOException An I/O exception was thrown while reading, or the file is not a trace.
+     */
+    public static long decode(File file, Appendable out, int from, int to, int op, long limit) throws IOException {
+        FileInputStream is = new FileInputStream(file);
+        try {
+            FileChannel channel = is.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocateDirect(PUBLISH_INTERVAL * 64 * RECORD_SIZE);
+            buffer.limit(HEADER_SIZE);
+            while(buffer.hasRemaining())
+                if(channel.read(buffer) == -1)
+                    throw new IOException("The file does not hold a trace...");
+            buffer.flip();
+            if(buffer.getInt() != MAGIC || buffer.getShort() != VERSION || buffer.getShort() != RECORD_SIZE)
+                throw new IOException("The file does not hold a trace of this version...");
+            buffer.clear();
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            long index = 0L;
+            long lines = 0L;
+            while(lines < limit && channel.read(buffer) != -1) {
+                buffer.flip();
+                for(; buffer.remaining() >= RECORD_SIZE && lines < limit; index++) {
+                    int pc = buffer.getChar();
+                    int insn = buffer.getChar();
+                    int a = buffer.getChar();
+                    int b = buffer.getChar();
+                    int o = buffer.getChar();
+                    int cycles = buffer.getChar();
+                    int insnOp = (insn & 0xF) != 0 ? insn & 0xF : (insn >>> 4 & 0x3F) << 4;
+                    if(pc < from || pc > to || op >= 0 && insnOp != op)
+                        continue;
+                    String name = insnOp < Ops.OP_NAMES.length ? Ops.OP_NAMES[insnOp] : null;
+                    out.append(String.format("%12d 0x%04x %-4s 0x%04x a=0x%04x b=0x%04x o=0x%04x cycles=%d\n",
+                                             index, pc, name == null ? "?" : name, insn, a, b, o, cycles));
+                    lines++;
+                }
+                buffer.compact();
+            }
+            return lines;
+        } finally {
+            is.close();
+        }
+    }
+
+    /**
+     * Gets the amount of records written.
+     * @return The amount of records.
+     */
+    public long getRecords() {
+        return head;
+    }
+
+    @Override
+    public void run() {
+        ByteBuffer view = ring.duplicate();
+        long tail = 0L;
+        try {
+            while(true) {
+                long available = published.get();
+                if(available == tail) {
+                    /* The records are published before the tracer is closed. */
+                    if(closed && published.get() == tail)
+                        break;
+                    LockSupport.parkNanos(this, DRAIN_NANOS);
+                    continue;
+                }
+                while(tail < available) {
+                    int start = (int) tail & AMOUNT_RECORDS - 1;
+                    int end = (int) Math.min(available - tail + start, AMOUNT_RECORDS);
+                    view.limit(end * RECORD_SIZE).position(start * RECORD_SIZE);
+                    while(view.hasRemaining())
+                        channel.write(view);
+                    tail += end - start;
+                }
+                drained.lazySet(tail);
+            }
+        } catch(IOException ex) {
+            failure = ex;
+        }
+    }
+}